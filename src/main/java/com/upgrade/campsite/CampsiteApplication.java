@@ -1,29 +1,31 @@
 package com.upgrade.campsite;
 
-import com.upgrade.campsite.dto.InitializeRequest;
-import com.upgrade.campsite.services.CampsiteService;
+import com.upgrade.campsite.services.CalendarHorizonExtender;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 
 import javax.annotation.PostConstruct;
-import java.time.LocalDate;
 
 @SpringBootApplication
 @EnableJpaAuditing
+@EnableScheduling
+@DependsOn("sequenceAligner")
 public class CampsiteApplication {
 
-    private CampsiteService campsiteService;
+    private CalendarHorizonExtender calendarHorizonExtender;
 
     @Autowired
-    public CampsiteApplication(CampsiteService campsiteService) {
-        this.campsiteService = campsiteService;
+    public CampsiteApplication(CalendarHorizonExtender calendarHorizonExtender) {
+        this.calendarHorizonExtender = calendarHorizonExtender;
     }
 
     public static void main(String[] args) {
@@ -32,12 +34,9 @@ public class CampsiteApplication {
 
     @PostConstruct
     public void postConstruct() {
-        // This initialize the microserve to have available dates for the next 60 days
-        LocalDate availableStartDate = LocalDate.now().plusDays(1L);
-        LocalDate availableEndDate = availableStartDate.plusMonths(2L);
-
-        InitializeRequest initializeRequest = InitializeRequest.builder().availableStartDate(availableStartDate)
-                .availableEndDate(availableEndDate).build();
-        campsiteService.initialize(initializeRequest);
+        // This initialize the microserve to have available dates for the next 60 days.
+        // Only the dates after the last existing schedule are inserted, and the
+        // horizon keeps rolling forward daily while the service is up.
+        calendarHorizonExtender.extend();
     }
 }
@@ -0,0 +1,70 @@
+package com.upgrade.campsite.configs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Schedule rows written before dates had a capacity carry the booking in SCHEDULE.BOOKING_ID.
+ * At startup those rows get upgrade.campsite.capacity units, one of them booked, and the booking
+ * is moved to an ALLOCATION row.  Databases without the old column are left alone.
+ */
+@Slf4j
+@Component
+public class CapacityBackfill {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private Integer capacity;
+
+    /**
+     * The EntityManagerFactory is only a dependency so that the schema exists before backfilling.
+     */
+    @Autowired
+    public CapacityBackfill(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                            @Value("${upgrade.campsite.capacity}") Integer capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+    }
+
+    @PostConstruct
+    public void backfill() {
+        boolean legacyColumns = hasColumn("BOOKING_ID");
+        if (legacyColumns) {
+            String heldUntil = hasColumn("HELD_UNTIL") ? "held_until" : "null";
+            int moved = jdbcTemplate.update(
+                    "insert into allocation (id, booking_id, schedule_date, status, held_until, " +
+                            "created_date, modified_date, modified_by) " +
+                            "select next value for allocation_seq, booking_id, schedule_date, status, " + heldUntil + ", " +
+                            "created_date, modified_date, modified_by " +
+                            "from schedule where booking_id is not null and capacity is null");
+            if (moved > 0) {
+                log.info("Moved " + moved + " booked nights from SCHEDULE to ALLOCATION");
+            }
+        }
+
+        int counted = jdbcTemplate.update(
+                "update schedule set capacity = ?, " +
+                        "booked = case when status = 'AVAILABLE' then 0 else 1 end, " +
+                        "status = case when status = 'AVAILABLE' or ? > 1 then 'AVAILABLE' else 'NOT_AVAILABLE' end " +
+                        "where capacity is null",
+                capacity, capacity);
+        if (counted > 0) {
+            log.info("Set capacity " + capacity + " on " + counted + " schedule dates");
+        }
+
+        if (legacyColumns) {
+            jdbcTemplate.update("update schedule set booking_id = null where booking_id is not null");
+        }
+    }
+
+    private boolean hasColumn(String column) {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where table_name = 'SCHEDULE' and column_name = ?", Integer.class, column) > 0;
+    }
+}
@@ -0,0 +1,121 @@
+package com.upgrade.campsite.configs;
+
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.Schedule;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.SharedCacheMode;
+import java.net.URI;
+import java.util.UUID;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Optional Hibernate second-level cache (upgrade.campsite.hibernateCache.enabled) for Reservation and Schedule
+ * rows and for the results of the queries marked org.hibernate.cacheable.
+ *
+ * Every region is an Ehcache heap cache bounded to a number of entries, evicting the least used ones once full.
+ * Entities are cached READ_WRITE, so CampsiteService's saves update their entry on commit, and its bulk
+ * updates (claiming and releasing nights, expiring holds, archiving) evict the whole region of the table
+ * they change.  A cached query result is dropped by any commit touching one of its tables.
+ *
+ * Hit ratios per region are published as campsite.hibernateCache.hitRatio.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "upgrade.campsite.hibernateCache.enabled", havingValue = "true")
+public class HibernateCacheConfig {
+
+    static final String QUERY_REGION = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+
+    static final String TIMESTAMPS_REGION = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    /**
+     * Every context gets its own cache manager, so that test contexts sharing the JVM do not share entries.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${upgrade.campsite.hibernateCache.reservationEntries}") Long reservationEntries,
+                                              @Value("${upgrade.campsite.hibernateCache.scheduleEntries}") Long scheduleEntries,
+                                              @Value("${upgrade.campsite.hibernateCache.queryEntries}") Long queryEntries) {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("urn:campsite:hibernate:" + UUID.randomUUID()),
+                ConfigurationBuilder.newConfigurationBuilder().build());
+        createCache(cacheManager, Reservation.class.getName(), reservationEntries);
+        createCache(cacheManager, Schedule.class.getName(), scheduleEntries);
+        createCache(cacheManager, QUERY_REGION, queryEntries);
+        // one timestamp per table, never worth evicting
+        createCache(cacheManager, TIMESTAMPS_REGION, 1000L);
+        log.info("Hibernate second-level cache enabled: " + reservationEntries + " reservations, "
+                + scheduleEntries + " schedules, " + queryEntries + " query results");
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheProperties(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+            properties.put(AvailableSettings.USE_QUERY_CACHE, "true");
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager);
+            // the regions above are the only ones expected
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+            properties.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+            properties.put(AvailableSettings.GENERATE_STATISTICS, "true");
+        };
+    }
+
+    @Bean
+    public MeterBinder hibernateCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> {
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            hitRatio(registry, "reservation", statistics,
+                    s -> ratio(s.getDomainDataRegionStatistics(Reservation.class.getName())));
+            hitRatio(registry, "schedule", statistics,
+                    s -> ratio(s.getDomainDataRegionStatistics(Schedule.class.getName())));
+            hitRatio(registry, "query", statistics,
+                    s -> ratio(s.getQueryCacheHitCount(), s.getQueryCacheMissCount()));
+        };
+    }
+
+    private static void createCache(CacheManager cacheManager, String region, Long entries) {
+        cacheManager.createCache(region, Eh107Configuration.fromEhcacheCacheConfiguration(
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                        ResourcePoolsBuilder.heap(entries))));
+    }
+
+    private static void hitRatio(MeterRegistry registry, String region,
+                                 Statistics statistics, ToDoubleFunction<Statistics> ratio) {
+        Gauge.builder("campsite.hibernateCache.hitRatio", statistics, ratio)
+                .tag("region", region)
+                .description("Share of second-level cache lookups answered from the cache")
+                .register(registry);
+    }
+
+    private static double ratio(CacheRegionStatistics statistics) {
+        return ratio(statistics.getHitCount(), statistics.getMissCount());
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0L ? 0.0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,54 @@
+package com.upgrade.campsite.configs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Reservation, Schedule, Allocation and ReservationHistory ids come from pooled sequences
+ * (allocationSize 50) so that Hibernate can batch their inserts.  Databases created while the ids were IDENTITY
+ * columns already hold rows, so at startup each sequence is moved past the highest
+ * existing id before anything gets inserted.
+ */
+@Slf4j
+@Component
+public class SequenceAligner {
+
+    private static final long ALLOCATION_SIZE = 50L;
+
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * The EntityManagerFactory and CapacityBackfill are only dependencies so that the schema
+     * exists and legacy rows are moved before aligning.
+     */
+    @Autowired
+    public SequenceAligner(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                           CapacityBackfill capacityBackfill) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void align() {
+        align("RESERVATION_SEQ", "RESERVATION");
+        align("SCHEDULE_SEQ", "SCHEDULE");
+        align("ALLOCATION_SEQ", "ALLOCATION");
+        align("RESERVATION_HISTORY_SEQ", "RESERVATION_HISTORY");
+    }
+
+    private void align(String sequence, String table) {
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from " + table, Long.class);
+        Long currentValue = jdbcTemplate.queryForObject(
+                "select current_value from information_schema.sequences where sequence_name = ?",
+                Long.class, sequence);
+        if (maxId != null && currentValue < maxId) {
+            // The pooled optimizer hands out (value - 49 .. value], so restart a full block past maxId.
+            jdbcTemplate.execute("alter sequence " + sequence + " restart with " + (maxId + ALLOCATION_SIZE));
+            log.info("Moved " + sequence + " past existing " + table + " id " + maxId);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.upgrade.campsite.dto;
+
+import com.upgrade.campsite.enums.ScheduleStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@Data
+@Builder
+public class AvailabilityDelta {
+    private Long sequence;
+    private Map<LocalDate, ScheduleStatus> changes;
+    private Map<LocalDate, Integer> remaining;
+}
@@ -0,0 +1,13 @@
+package com.upgrade.campsite.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ConfirmationRequest {
+    private String bookingId;
+    private String firstName;
+    private String lastName;
+    private String email;
+}
@@ -0,0 +1,14 @@
+package com.upgrade.campsite.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ConfirmationResponse {
+    private ConfirmationRequest confirmationRequest;
+    private ReservationResponse reservationResponse;
+    private List<String> errors;
+}
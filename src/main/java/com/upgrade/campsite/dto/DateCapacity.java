@@ -0,0 +1,13 @@
+package com.upgrade.campsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class DateCapacity {
+    private LocalDate scheduleDate;
+    private Integer remaining;
+}
@@ -0,0 +1,13 @@
+package com.upgrade.campsite.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class HoldRequest {
+    private LocalDate checkInDate;
+    private LocalDate checkOutDate;
+}
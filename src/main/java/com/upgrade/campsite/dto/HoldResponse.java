@@ -0,0 +1,16 @@
+package com.upgrade.campsite.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class HoldResponse {
+    private String bookingId;
+    private LocalDateTime heldUntil;
+    private HoldRequest holdRequest;
+    private List<String> errors;
+}
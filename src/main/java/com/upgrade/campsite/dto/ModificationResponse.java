@@ -3,6 +3,7 @@ package com.upgrade.campsite.dto;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Data
@@ -11,5 +12,7 @@ public class ModificationResponse {
     private ModificationRequest modificationRequest;
     private CancellationResponse cancellationResponse;
     private ReservationResponse reservationResponse;
+    private List<LocalDate> addedDates;
+    private List<LocalDate> releasedDates;
     private List<String> errors;
 }
@@ -11,4 +11,5 @@ public class ReservationResponse {
     private String bookingId;
     private ReservationRequest reservationRequest;
     private List<String> errors;
+    private List<StayWindow> alternatives;
 }
@@ -5,11 +5,13 @@ import lombok.Data;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
 public class SchedulesResponse {
     private List<LocalDate> availableDates;
+    private Map<LocalDate, Integer> remainingCapacity;
     private SchedulesRequest schedulesRequest;
     private List<String> errors;
 }
@@ -0,0 +1,14 @@
+package com.upgrade.campsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class StayClaim {
+    private String bookingId;
+    private LocalDate checkInDate;
+    private LocalDate checkOutDate;
+}
@@ -0,0 +1,17 @@
+package com.upgrade.campsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StayWindow {
+    private LocalDate checkInDate;
+    private LocalDate checkOutDate;
+}
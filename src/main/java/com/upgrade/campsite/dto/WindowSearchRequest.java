@@ -0,0 +1,19 @@
+package com.upgrade.campsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WindowSearchRequest {
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Integer nights;
+    private Integer limit;
+}
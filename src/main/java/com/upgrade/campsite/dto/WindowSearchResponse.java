@@ -0,0 +1,14 @@
+package com.upgrade.campsite.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class WindowSearchResponse {
+    private List<StayWindow> windows;
+    private WindowSearchRequest windowSearchRequest;
+    private List<String> errors;
+}
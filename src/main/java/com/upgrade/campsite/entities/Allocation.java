@@ -0,0 +1,58 @@
+package com.upgrade.campsite.entities;
+
+import com.upgrade.campsite.enums.ScheduleStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One unit of one night taken by a booking.  status is NOT_AVAILABLE for a reserved
+ * night and HELD, until heldUntil, for a held one.
+ */
+@Builder
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_allocation_booking_date", columnNames = {"bookingId", "scheduleDate"}),
+        indexes = @Index(name = "ix_allocation_schedule_date", columnList = "scheduleDate"))
+public class Allocation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "allocation_seq")
+    @SequenceGenerator(name = "allocation_seq", sequenceName = "allocation_seq", allocationSize = 50)
+    private Long id;
+
+    @Column
+    private String bookingId;
+
+    @Column
+    private LocalDate scheduleDate;
+
+    @Enumerated(EnumType.STRING)
+    private ScheduleStatus status;
+
+    @Column
+    private LocalDateTime heldUntil;
+
+    @Column
+    @CreatedDate
+    private LocalDateTime createdDate;
+
+    @Column
+    @LastModifiedDate
+    private LocalDateTime modifiedDate;
+
+    @Column
+    @LastModifiedBy
+    private String modifiedBy;
+}
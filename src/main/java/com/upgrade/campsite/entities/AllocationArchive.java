@@ -0,0 +1,46 @@
+package com.upgrade.campsite.entities;
+
+import com.upgrade.campsite.enums.ScheduleStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * An Allocation of an archived night, moved out of ALLOCATION by CalendarArchiver.
+ */
+@Builder
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "ix_allocation_archive_booking_id", columnList = "bookingId"))
+public class AllocationArchive {
+    @Id
+    private Long id;
+
+    @Column
+    private String bookingId;
+
+    @Column
+    private LocalDate scheduleDate;
+
+    @Enumerated(EnumType.STRING)
+    private ScheduleStatus status;
+
+    @Column
+    private LocalDateTime createdDate;
+
+    @Column
+    private LocalDateTime modifiedDate;
+
+    @Column
+    private String modifiedBy;
+
+    @Column
+    private LocalDateTime archivedDate;
+}
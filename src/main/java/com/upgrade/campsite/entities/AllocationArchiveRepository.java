@@ -0,0 +1,26 @@
+package com.upgrade.campsite.entities;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface AllocationArchiveRepository extends CrudRepository<AllocationArchive, Long> {
+
+    List<AllocationArchive> findByBookingIdOrderByScheduleDate(String bookingId);
+
+    /**
+     * Copies the ALLOCATION rows of the given dates in one statement.
+     * @return the number of rows copied
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = "insert into allocation_archive " +
+            "(id, booking_id, schedule_date, status, created_date, modified_date, modified_by, archived_date) " +
+            "select id, booking_id, schedule_date, status, created_date, modified_date, modified_by, ?2 " +
+            "from allocation where schedule_date in ?1")
+    int archive(Collection<LocalDate> scheduleDates, LocalDateTime archivedDate);
+}
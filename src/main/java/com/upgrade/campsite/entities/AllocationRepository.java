@@ -0,0 +1,71 @@
+package com.upgrade.campsite.entities;
+
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface AllocationRepository extends CrudRepository<Allocation, Long> {
+
+    @Query("select a.scheduleDate from Allocation a " +
+            "where bookingId = ?1 order by scheduleDate")
+    List<LocalDate> findScheduleDatesByBookingId(String bookingId);
+
+    @Query("select a.scheduleDate from Allocation a " +
+            "where bookingId = ?1 and status = ?2 order by scheduleDate")
+    List<LocalDate> findScheduleDatesByBookingIdAndStatus(String bookingId, ScheduleStatus status);
+
+    List<Allocation> findByBookingId(String bookingId);
+
+    List<Allocation> findByStatus(ScheduleStatus status);
+
+    @Query("select a from Allocation a " +
+            "where scheduleDate >= ?1 and scheduleDate < ?2")
+    List<Allocation> findByStay(LocalDate checkInDate, LocalDate checkOutDate);
+
+    /**
+     * Turns the unexpired nights held for bookingId into reserved nights.
+     * @return the number of nights confirmed
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Allocation a " +
+            "set a.status = com.upgrade.campsite.enums.ScheduleStatus.NOT_AVAILABLE, " +
+            "a.heldUntil = null, a.modifiedBy = ?2, a.modifiedDate = ?3 " +
+            "where a.bookingId = ?1 and a.heldUntil > ?3 " +
+            "and a.status = com.upgrade.campsite.enums.ScheduleStatus.HELD")
+    int confirmHold(String bookingId,
+                    String modifiedBy,
+                    LocalDateTime modifiedDate);
+
+    /**
+     * Returns one date per expired held night of any of bookingIds, so a date held by
+     * two bookings appears twice.
+     */
+    @Query("select a.scheduleDate from Allocation a " +
+            "where bookingId in ?1 and heldUntil <= ?2 " +
+            "and status = com.upgrade.campsite.enums.ScheduleStatus.HELD")
+    List<LocalDate> findExpiredHoldDates(Collection<String> bookingIds, LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Allocation a " +
+            "where a.bookingId in ?1 and a.heldUntil <= ?2 " +
+            "and a.status = com.upgrade.campsite.enums.ScheduleStatus.HELD")
+    int deleteExpiredHolds(Collection<String> bookingIds, LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Allocation a where a.bookingId = ?1")
+    int deleteByBookingId(String bookingId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Allocation a where a.bookingId = ?1 and a.scheduleDate in ?2")
+    int deleteByBookingIdAndScheduleDates(String bookingId, Collection<LocalDate> scheduleDates);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Allocation a where a.scheduleDate in ?1")
+    int deleteByScheduleDates(Collection<LocalDate> scheduleDates);
+}
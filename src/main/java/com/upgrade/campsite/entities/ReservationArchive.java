@@ -0,0 +1,60 @@
+package com.upgrade.campsite.entities;
+
+import com.upgrade.campsite.enums.ReservationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A cancelled or checked-out Reservation moved out of RESERVATION by CalendarArchiver.
+ * Keeps the id it had there.
+ */
+@Builder
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "ux_reservation_archive_booking_id", columnList = "bookingId", unique = true))
+public class ReservationArchive {
+
+    @Id
+    private Long id;
+
+    @Column
+    private String bookingId;
+
+    @Column
+    private String firstName;
+
+    @Column
+    private String lastName;
+
+    @Column
+    private String email;
+
+    @Column
+    private LocalDate checkInDate;
+
+    @Column
+    private LocalDate checkOutDate;
+
+    @Enumerated(EnumType.STRING)
+    private ReservationStatus status;
+
+    @Column
+    private LocalDateTime createdDate;
+
+    @Column
+    private LocalDateTime modifiedDate;
+
+    @Column
+    private String modifiedBy;
+
+    @Column
+    private LocalDateTime archivedDate;
+}
@@ -0,0 +1,32 @@
+package com.upgrade.campsite.entities;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReservationArchiveRepository extends CrudRepository<ReservationArchive, Long> {
+
+    Optional<ReservationArchive> findByBookingId(String bookingId);
+
+    @Query("select r from ReservationArchive r where id > ?1 order by id")
+    List<ReservationArchive> findPage(Long afterId, Pageable pageable);
+
+    /**
+     * Copies the RESERVATION rows of the given booking IDs in one statement.
+     * @return the number of rows copied
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = "insert into reservation_archive " +
+            "(id, booking_id, first_name, last_name, email, check_in_date, check_out_date, status, " +
+            "created_date, modified_date, modified_by, archived_date) " +
+            "select id, booking_id, first_name, last_name, email, check_in_date, check_out_date, status, " +
+            "created_date, modified_date, modified_by, ?2 " +
+            "from reservation where booking_id in ?1")
+    int archive(Collection<String> bookingIds, LocalDateTime archivedDate);
+}
@@ -15,10 +15,12 @@ import java.time.LocalDateTime;
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
+@Table(indexes = @Index(name = "ix_reservation_history_booking_id", columnList = "bookingId"))
 public class ReservationHistory {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_history_seq")
+    @SequenceGenerator(name = "reservation_history_seq", sequenceName = "reservation_history_seq", allocationSize = 50)
     private Long id;
 
     @Column
@@ -0,0 +1,10 @@
+package com.upgrade.campsite.entities;
+
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface ReservationHistoryRepository extends CrudRepository<ReservationHistory, Long> {
+
+    List<ReservationHistory> findByBookingIdOrderById(String bookingId);
+}
@@ -1,29 +1,61 @@
 package com.upgrade.campsite.entities;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
 import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ReservationsRepository extends CrudRepository<Reservation, Long> {
 
     @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
     Optional<Reservation> findByBookingId(String bookingId);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     @Query("select r from Reservation r where bookingId = ?1 ")
     Optional<Reservation> findByBookingIdNoLock(String bookingId);
 
     @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
     Optional<Reservation> findById(Long id);
 
-    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
+    boolean existsByBookingId(String bookingId);
+
     List<Reservation> findAll();
 
+    @Query("select r from Reservation r where id > ?1 order by id")
+    List<Reservation> findPage(Long afterId, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    @Query("select r from Reservation r order by id")
+    Stream<Reservation> streamAll();
+
+    /**
+     * Booking IDs of the reservations that checked out on or before checkOutDate, or were
+     * cancelled before cancelledBefore.
+     */
+    @Query("select r.bookingId from Reservation r " +
+            "where checkOutDate <= ?1 " +
+            "or (status = com.upgrade.campsite.enums.ReservationStatus.CANCELED and modifiedDate < ?2) " +
+            "order by id")
+    List<String> findArchivableBookingIds(LocalDate checkOutDate, LocalDateTime cancelledBefore, Pageable pageable);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Reservation r where r.bookingId in ?1")
+    int deleteByBookingIds(Collection<String> bookingIds);
+
     @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
     @Query("select r from Reservation r where checkInDate <= ?1 or checkOutDate >= ?2")
     List<Reservation> findReservationConflicts(LocalDate checkInDate, LocalDate checkOutDate);
@@ -1,11 +1,12 @@
 package com.upgrade.campsite.entities;
 
-import com.upgrade.campsite.enums.ReservationStatus;
 import com.upgrade.campsite.enums.ScheduleStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -21,23 +22,39 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @EntityListeners(AuditingEntityListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_schedule_date", columnNames = "scheduleDate"))
 public class Schedule {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "schedule_seq")
+    @SequenceGenerator(name = "schedule_seq", sequenceName = "schedule_seq", allocationSize = 50)
     private Long id;
 
     @Version
     private Long version;
 
-    @Column
-    private String bookingId;
-
     @Column
     private LocalDate scheduleDate;
 
+    /**
+     * AVAILABLE while booked is below capacity, NOT_AVAILABLE once every unit is taken.
+     */
     @Enumerated(EnumType.STRING)
     private ScheduleStatus status;
 
+    /**
+     * Number of identical units (pitches) bookable on this date.
+     */
+    @Column
+    private Integer capacity;
+
+    /**
+     * Number of units taken by reservations and holds; one Allocation per unit.
+     */
+    @Column
+    private Integer booked;
+
     @Column
     @CreatedDate
     private LocalDateTime createdDate;
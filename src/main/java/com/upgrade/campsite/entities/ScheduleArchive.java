@@ -0,0 +1,49 @@
+package com.upgrade.campsite.entities;
+
+import com.upgrade.campsite.enums.ScheduleStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A past Schedule moved out of SCHEDULE by CalendarArchiver.  Keeps the id it had there.
+ */
+@Builder
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "ix_schedule_archive_date", columnList = "scheduleDate"))
+public class ScheduleArchive {
+    @Id
+    private Long id;
+
+    @Column
+    private LocalDate scheduleDate;
+
+    @Enumerated(EnumType.STRING)
+    private ScheduleStatus status;
+
+    @Column
+    private Integer capacity;
+
+    @Column
+    private Integer booked;
+
+    @Column
+    private LocalDateTime createdDate;
+
+    @Column
+    private LocalDateTime modifiedDate;
+
+    @Column
+    private String modifiedBy;
+
+    @Column
+    private LocalDateTime archivedDate;
+}
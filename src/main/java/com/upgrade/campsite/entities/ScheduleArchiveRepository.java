@@ -0,0 +1,29 @@
+package com.upgrade.campsite.entities;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ScheduleArchiveRepository extends CrudRepository<ScheduleArchive, Long> {
+
+    @Query("select s from ScheduleArchive s " +
+            "where scheduleDate >= ?1 and scheduleDate <= ?2 order by scheduleDate")
+    List<ScheduleArchive> findBetweenDates(LocalDate startDate, LocalDate endDate, Pageable pageable);
+
+    /**
+     * Copies the SCHEDULE rows of the given dates in one statement.
+     * @return the number of rows copied
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = "insert into schedule_archive " +
+            "(id, schedule_date, status, capacity, booked, created_date, modified_date, modified_by, archived_date) " +
+            "select id, schedule_date, status, capacity, booked, created_date, modified_date, modified_by, ?2 " +
+            "from schedule where schedule_date in ?1")
+    int archive(Collection<LocalDate> scheduleDates, LocalDateTime archivedDate);
+}
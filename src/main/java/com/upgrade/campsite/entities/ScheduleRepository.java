@@ -1,14 +1,22 @@
 package com.upgrade.campsite.entities;
 
+import com.upgrade.campsite.dto.DateCapacity;
 import com.upgrade.campsite.enums.ScheduleStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
 import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ScheduleRepository extends CrudRepository<Schedule, Long> {
 
@@ -21,14 +29,51 @@ public interface ScheduleRepository extends CrudRepository<Schedule, Long> {
     @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
     Optional<Schedule> findByScheduleDateAndStatus(LocalDate scheduleDate, ScheduleStatus scheduleStatus);
 
-    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
-    List<Schedule> findByBookingId(String bookingId);
+    @Query("select new com.upgrade.campsite.dto.DateCapacity(s.scheduleDate, s.capacity - s.booked) " +
+            "from Schedule s where booked < capacity")
+    List<DateCapacity> findAvailableCapacity();
 
-    @Query("select s from Schedule s " +
-            "where bookingId = ?1")
-    List<Schedule> findByBookingIdNoLock(String bookingId);
+    @Query("select new com.upgrade.campsite.dto.DateCapacity(s.scheduleDate, s.capacity - s.booked) " +
+            "from Schedule s where scheduleDate in ?1")
+    List<DateCapacity> findRemainingCapacity(Collection<LocalDate> scheduleDates);
+
+    @Query("select new com.upgrade.campsite.dto.DateCapacity(s.scheduleDate, s.capacity - s.booked) " +
+            "from Schedule s")
+    List<DateCapacity> findAllCapacity();
+
+    @Query("select new com.upgrade.campsite.dto.DateCapacity(s.scheduleDate, s.capacity - s.booked) " +
+            "from Schedule s where scheduleDate > ?1")
+    List<DateCapacity> findCapacityAfter(LocalDate scheduleDate);
+
+    @Query("select sum(s.capacity - s.booked) from Schedule s")
+    Long findTotalRemaining();
+
+    /**
+     * Sum of the units left on every date weighted by the date as yyyymmdd, which moves whenever a
+     * unit moves from one date to another.
+     */
+    @Query("select sum((year(s.scheduleDate) * 10000 + month(s.scheduleDate) * 100 + day(s.scheduleDate)) " +
+            "* cast(s.capacity - s.booked as long)) from Schedule s")
+    Long findDateWeightedRemaining();
+
+    @Query("select s.scheduleDate from Schedule s " +
+            "where scheduleDate >= ?1 and scheduleDate <= ?2")
+    List<LocalDate> findScheduleDatesBetween(LocalDate startDate, LocalDate endDate);
+
+    @Query("select max(s.scheduleDate) from Schedule s")
+    LocalDate findMaxScheduleDate();
+
+    @Query("select min(s.scheduleDate) from Schedule s")
+    LocalDate findMinScheduleDate();
+
+    @Query("select s.scheduleDate from Schedule s " +
+            "where scheduleDate < ?1 order by scheduleDate")
+    List<LocalDate> findScheduleDatesBefore(LocalDate scheduleDate, Pageable pageable);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Schedule s where s.scheduleDate in ?1")
+    int deleteByScheduleDates(Collection<LocalDate> scheduleDates);
 
-    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
     @Query("select s from Schedule s " +
             "where scheduleDate >= ?1 and scheduleDate <= ?2 " +
             "and status =  ?3")
@@ -36,5 +81,60 @@ public interface ScheduleRepository extends CrudRepository<Schedule, Long> {
                                               LocalDate endDate,
                                               ScheduleStatus scheduleStatus);
 
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from Schedule s " +
+            "where scheduleDate >= ?1 and scheduleDate < ?2")
+    List<Schedule> findByStay(LocalDate checkInDate, LocalDate checkOutDate);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    @Query("select s from Schedule s " +
+            "where scheduleDate >= ?1 and scheduleDate < ?2")
+    List<Schedule> findByStayNoLock(LocalDate checkInDate, LocalDate checkOutDate);
+
+    /**
+     * Takes one unit of every night in [checkInDate, checkOutDate) that has one left, in one statement.
+     * A night whose last unit is taken becomes NOT_AVAILABLE.  The statuses are parameters because HQL
+     * does not accept enum constants as CASE results.  The condition makes the claim safe on its own,
+     * so version is bumped but never compared, also in OPTIMISTIC locking mode.
+     * @return the number of nights claimed
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Schedule s " +
+            "set s.booked = s.booked + 1, " +
+            "s.status = case when s.booked + 1 >= s.capacity then ?5 else ?6 end, " +
+            "s.modifiedBy = ?3, s.modifiedDate = ?4, s.version = s.version + 1 " +
+            "where s.scheduleDate >= ?1 and s.scheduleDate < ?2 " +
+            "and s.booked < s.capacity")
+    int claimBetweenDates(LocalDate checkInDate,
+                          LocalDate checkOutDate,
+                          String modifiedBy,
+                          LocalDateTime modifiedDate,
+                          ScheduleStatus full,
+                          ScheduleStatus notFull);
+
+    /**
+     * Gives units back on each of the given nights in one statement, making them AVAILABLE.
+     * @return the number of nights released
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Schedule s " +
+            "set s.booked = s.booked - ?2, " +
+            "s.status = com.upgrade.campsite.enums.ScheduleStatus.AVAILABLE, " +
+            "s.modifiedBy = ?3, s.modifiedDate = ?4, s.version = s.version + 1 " +
+            "where s.scheduleDate in ?1 and s.booked >= ?2")
+    int releaseDates(Collection<LocalDate> scheduleDates,
+                     Integer units,
+                     String modifiedBy,
+                     LocalDateTime modifiedDate);
+
     List<Schedule> findAll();
+
+    @Query("select s from Schedule s where id > ?1 order by id")
+    List<Schedule> findPage(Long afterId, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    @Query("select s from Schedule s order by id")
+    Stream<Schedule> streamAll();
 }
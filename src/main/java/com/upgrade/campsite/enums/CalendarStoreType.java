@@ -0,0 +1,14 @@
+package com.upgrade.campsite.enums;
+
+public enum CalendarStoreType {
+
+    JPA("Jpa"),
+    IN_MEMORY("InMemory");
+
+    CalendarStoreType(String message) {
+        this.message = message;
+    };
+
+    String message;
+
+}
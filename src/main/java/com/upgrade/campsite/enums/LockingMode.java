@@ -0,0 +1,14 @@
+package com.upgrade.campsite.enums;
+
+public enum LockingMode {
+
+    PESSIMISTIC("Pessimistic"),
+    OPTIMISTIC("Optimistic");
+
+    LockingMode(String message) {
+        this.message = message;
+    };
+
+    String message;
+
+}
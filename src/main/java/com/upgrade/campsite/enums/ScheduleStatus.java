@@ -3,7 +3,8 @@ package com.upgrade.campsite.enums;
 public enum ScheduleStatus {
 
     AVAILABLE("Available"),
-    NOT_AVAILABLE("Not Available");
+    NOT_AVAILABLE("Not Available"),
+    HELD("Held");
 
     ScheduleStatus(String message) {
         this.message = message;
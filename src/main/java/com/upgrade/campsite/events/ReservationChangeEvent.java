@@ -0,0 +1,22 @@
+package com.upgrade.campsite.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Published by CampsiteService whenever a reservation or the nights it holds change.
+ * Listeners should use @TransactionalEventListener so they only see committed changes.
+ */
+@Getter
+@AllArgsConstructor
+public class ReservationChangeEvent {
+
+    private final Collection<String> bookingIds;
+
+    public static ReservationChangeEvent of(String... bookingIds) {
+        return new ReservationChangeEvent(Arrays.asList(bookingIds));
+    }
+}
@@ -0,0 +1,40 @@
+package com.upgrade.campsite.events;
+
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationHistory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Published by CampsiteService with a copy of every reservation it creates or changes, taken
+ * when the change is made.  ReservationHistoryWriter stores the copies once the change commits.
+ */
+@Getter
+@AllArgsConstructor
+public class ReservationHistoryEvent {
+
+    private final List<ReservationHistory> entries;
+
+    public static ReservationHistoryEvent of(Collection<Reservation> reservations, String createdBy) {
+        LocalDateTime now = LocalDateTime.now();
+        return new ReservationHistoryEvent(reservations.stream()
+                .map(reservation -> ReservationHistory.builder()
+                        .reservationId(reservation.getId())
+                        .bookingId(reservation.getBookingId())
+                        .firstName(reservation.getFirstName())
+                        .lastName(reservation.getLastName())
+                        .email(reservation.getEmail())
+                        .checkInDate(reservation.getCheckInDate())
+                        .checkOutDate(reservation.getCheckOutDate())
+                        .status(reservation.getStatus())
+                        .createDateTime(now)
+                        .createdBy(createdBy)
+                        .build())
+                .collect(Collectors.toList()));
+    }
+}
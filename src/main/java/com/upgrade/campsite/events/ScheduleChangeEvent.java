@@ -0,0 +1,66 @@
+package com.upgrade.campsite.events;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Published by CampsiteService whenever schedule dates change status or remaining capacity, and by
+ * CalendarArchiver when it removes them.
+ * Listeners should use @TransactionalEventListener so they only see committed changes.
+ */
+@Getter
+@AllArgsConstructor
+public class ScheduleChangeEvent {
+
+    private final Map<LocalDate, ScheduleStatus> changes;
+
+    /**
+     * Units left on each changed date after the change.
+     */
+    private final Map<LocalDate, Integer> remaining;
+
+    /**
+     * Dates that no longer exist, such as the ones moved out by CalendarArchiver.  They are also
+     * in changes as NOT_AVAILABLE with no unit left.
+     */
+    private final Set<LocalDate> removed;
+
+    /**
+     * For dates with a single unit: AVAILABLE dates have one unit left, others none.
+     */
+    public static ScheduleChangeEvent of(Collection<LocalDate> dates, ScheduleStatus status) {
+        Map<LocalDate, ScheduleStatus> changes = new TreeMap<>();
+        Map<LocalDate, Integer> remaining = new TreeMap<>();
+        for (LocalDate date : dates) {
+            changes.put(date, status);
+            remaining.put(date, status == ScheduleStatus.AVAILABLE ? 1 : 0);
+        }
+        return new ScheduleChangeEvent(changes, remaining, Collections.emptySet());
+    }
+
+    public static ScheduleChangeEvent of(Collection<DateCapacity> capacities) {
+        Map<LocalDate, ScheduleStatus> changes = new TreeMap<>();
+        Map<LocalDate, Integer> remaining = new TreeMap<>();
+        for (DateCapacity capacity : capacities) {
+            changes.put(capacity.getScheduleDate(),
+                    capacity.getRemaining() > 0 ? ScheduleStatus.AVAILABLE : ScheduleStatus.NOT_AVAILABLE);
+            remaining.put(capacity.getScheduleDate(), capacity.getRemaining());
+        }
+        return new ScheduleChangeEvent(changes, remaining, Collections.emptySet());
+    }
+
+    public static ScheduleChangeEvent removed(Collection<LocalDate> dates) {
+        ScheduleChangeEvent event = of(dates, ScheduleStatus.NOT_AVAILABLE);
+        return new ScheduleChangeEvent(event.changes, event.remaining, new TreeSet<>(dates));
+    }
+}
@@ -1,6 +1,8 @@
 package com.upgrade.campsite.exceptions;
 
 import com.upgrade.campsite.dto.CancellationResponse;
+import com.upgrade.campsite.dto.ConfirmationResponse;
+import com.upgrade.campsite.dto.HoldResponse;
 import com.upgrade.campsite.dto.ModificationResponse;
 import com.upgrade.campsite.dto.ReservationResponse;
 import net.bytebuddy.implementation.bytecode.Throw;
@@ -27,6 +29,7 @@ public class CampsiteExceptionHandler extends ResponseEntityExceptionHandler {
         ReservationResponse reservationResponse = ReservationResponse.builder()
                 .reservationRequest(ex.getReservationRequest())
                 .errors(ex.getErrors())
+                .alternatives(ex.getAlternatives())
                 .build();
         return ResponseEntity.of(Optional.of(reservationResponse));
     }
@@ -48,4 +51,22 @@ public class CampsiteExceptionHandler extends ResponseEntityExceptionHandler {
                 .build();
         return ResponseEntity.of(Optional.of(reservationResponse));
     }
+
+    @ExceptionHandler(HoldException.class)
+    public final ResponseEntity<Object> holdException(HoldException ex, WebRequest request) {
+        HoldResponse holdResponse = HoldResponse.builder()
+                .holdRequest(ex.getHoldRequest())
+                .errors(ex.getErrors())
+                .build();
+        return ResponseEntity.of(Optional.of(holdResponse));
+    }
+
+    @ExceptionHandler(ConfirmationException.class)
+    public final ResponseEntity<Object> confirmationException(ConfirmationException ex, WebRequest request) {
+        ConfirmationResponse confirmationResponse = ConfirmationResponse.builder()
+                .confirmationRequest(ex.getConfirmationRequest())
+                .errors(ex.getErrors())
+                .build();
+        return ResponseEntity.of(Optional.of(confirmationResponse));
+    }
 }
@@ -0,0 +1,14 @@
+package com.upgrade.campsite.exceptions;
+
+import com.upgrade.campsite.dto.ConfirmationRequest;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ConfirmationException extends RuntimeException {
+    private ConfirmationRequest confirmationRequest;
+    private List<String> errors;
+}
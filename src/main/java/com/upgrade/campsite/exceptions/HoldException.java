@@ -0,0 +1,14 @@
+package com.upgrade.campsite.exceptions;
+
+import com.upgrade.campsite.dto.HoldRequest;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class HoldException extends RuntimeException {
+    private HoldRequest holdRequest;
+    private List<String> errors;
+}
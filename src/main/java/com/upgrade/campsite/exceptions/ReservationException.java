@@ -1,6 +1,7 @@
 package com.upgrade.campsite.exceptions;
 
 import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.StayWindow;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -11,4 +12,9 @@ import java.util.List;
 public class ReservationException extends RuntimeException {
     private ReservationRequest reservationRequest;
     private List<String> errors;
+    private List<StayWindow> alternatives;
+
+    public ReservationException(ReservationRequest reservationRequest, List<String> errors) {
+        this(reservationRequest, errors, null);
+    }
 }
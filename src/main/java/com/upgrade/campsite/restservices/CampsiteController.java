@@ -1,20 +1,41 @@
 package com.upgrade.campsite.restservices;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.upgrade.campsite.dto.*;
 import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationArchive;
 import com.upgrade.campsite.entities.Schedule;
+import com.upgrade.campsite.entities.ScheduleArchive;
 import com.upgrade.campsite.exceptions.CampsiteException;
+import com.upgrade.campsite.services.AvailabilityFeed;
+import com.upgrade.campsite.services.AvailabilityResponseCache;
+import com.upgrade.campsite.services.CalendarVersion;
 import com.upgrade.campsite.services.CampsiteService;
+import com.upgrade.campsite.services.ReservationBatcher;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 @RestController
@@ -22,11 +43,33 @@ import java.util.List;
         tags = {"campsite"})
 public class CampsiteController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private CampsiteService campsiteService;
 
+    private ReservationBatcher reservationBatcher;
+
+    private AvailabilityFeed availabilityFeed;
+
+    private CalendarVersion calendarVersion;
+
+    private AvailabilityResponseCache availabilityResponseCache;
+
+    private ObjectMapper objectMapper;
+
     @Autowired
-    public CampsiteController(CampsiteService campsiteService) {
+    public CampsiteController(CampsiteService campsiteService,
+                              ReservationBatcher reservationBatcher,
+                              AvailabilityFeed availabilityFeed,
+                              CalendarVersion calendarVersion,
+                              AvailabilityResponseCache availabilityResponseCache,
+                              ObjectMapper objectMapper) {
         this.campsiteService = campsiteService;
+        this.reservationBatcher = reservationBatcher;
+        this.availabilityFeed = availabilityFeed;
+        this.calendarVersion = calendarVersion;
+        this.availabilityResponseCache = availabilityResponseCache;
+        this.objectMapper = objectMapper;
     }
 
     @ApiOperation(value = "Find Reservation by BookingId", notes = "Get Reservation record by BookingId", tags = { "reservation" })
@@ -38,22 +81,73 @@ public class CampsiteController {
         return campsiteService.reservation(bookingId).get();
     }
 
-    @ApiOperation(value = "Get All Reservations", notes = "Get All Reservations", tags = { "reservations" })
+    @ApiOperation(value = "Get Reservations", notes = "Get a page of Reservations after the given id", tags = { "reservations" })
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Request Sent", response=List.class )  })
     @GetMapping("/reservations")
-    public List<Reservation> reservations() {
+    public List<Reservation> reservations(@RequestParam(value = "afterId", defaultValue = "0") Long afterId,
+                                          @RequestParam(value = "limit", required = false) Integer limit) {
 
-        return campsiteService.reservations();
+        return campsiteService.reservations(afterId, limit);
     }
 
-    @ApiOperation(value = "Get All Schedules", notes = "Get All Schedules", tags = { "schedules" })
+    @ApiOperation(value = "Find Archived Reservation by BookingId", notes = "Get a cancelled or past Reservation moved to the archive", tags = { "reservation" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "successful operation", response=ReservationArchive.class )  })
+    @GetMapping("/reservation/archive")
+    public ReservationArchive archivedReservation(@RequestParam ("bookingId") String bookingId) {
+
+        return campsiteService.archivedReservation(bookingId).get();
+    }
+
+    @ApiOperation(value = "Get Archived Reservations", notes = "Get a page of archived Reservations after the given id", tags = { "reservations" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Request Sent", response=List.class )  })
+    @GetMapping("/reservations/archive")
+    public List<ReservationArchive> archivedReservations(@RequestParam(value = "afterId", defaultValue = "0") Long afterId,
+                                                         @RequestParam(value = "limit", required = false) Integer limit) {
+
+        return campsiteService.archivedReservations(afterId, limit);
+    }
+
+    @ApiOperation(value = "Stream All Reservations", notes = "Stream All Reservations as NDJSON", tags = { "reservations" })
+    @GetMapping(value = "/reservations/stream", produces = NDJSON)
+    public StreamingResponseBody streamReservations() {
+
+        return out -> campsiteService.streamReservations(ndjson(out));
+    }
+
+    @ApiOperation(value = "Get Schedules", notes = "Get a page of Schedules after the given id", tags = { "schedules" })
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Request Sent", response=List.class )  })
     @GetMapping("/schedules")
-    public List<Schedule> schedules() {
+    public ResponseEntity<List<Schedule>> schedules(@RequestParam(value = "afterId", defaultValue = "0") Long afterId,
+                                                    @RequestParam(value = "limit", required = false) Integer limit,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        String eTag = calendarVersion.eTag();
+        if (matches(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+        return ok(eTag, campsiteService.schedules(afterId, limit));
+    }
+
+    @ApiOperation(value = "Get Archived Schedules", notes = "Get the archived Schedules between two past dates", tags = { "schedules" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Request Sent", response=List.class )  })
+    @GetMapping("/schedules/archive")
+    public List<ScheduleArchive> archivedSchedules(@RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                                   @RequestParam("endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+                                                   @RequestParam(value = "limit", required = false) Integer limit) {
+
+        return campsiteService.archivedSchedules(startDate, endDate, limit);
+    }
+
+    @ApiOperation(value = "Stream All Schedules", notes = "Stream All Schedules as NDJSON", tags = { "schedules" })
+    @GetMapping(value = "/schedules/stream", produces = NDJSON)
+    public StreamingResponseBody streamSchedules() {
 
-        return campsiteService.schedules();
+        return out -> campsiteService.streamSchedules(ndjson(out));
     }
 
 
@@ -61,19 +155,88 @@ public class CampsiteController {
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Request Sent", response=SchedulesResponse.class )  })
     @PostMapping("/available")
-    public SchedulesResponse available(@RequestBody SchedulesRequest schedulesRequest) {
+    public ResponseEntity<SchedulesResponse> available(@RequestBody SchedulesRequest schedulesRequest,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                       HttpServletResponse response) throws IOException {
 
-        return campsiteService.available(schedulesRequest);
+        // POST: WebRequest.checkNotModified would answer a matching If-None-Match with 412, not 304
+        String eTag = calendarVersion.eTag(schedulesRequest.getStartDate() + "/" + schedulesRequest.getEndDate());
+        if (matches(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+
+        AvailabilityResponseCache.Body cached = availabilityResponseCache.get(schedulesRequest);
+        if (cached != null) {
+            byte[] body = cached.json();
+            if (acceptsGzip(acceptEncoding)) {
+                body = cached.gzip();
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            response.setHeader(HttpHeaders.ETAG, eTag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+            return null;
+        }
+        return ok(eTag, campsiteService.available(schedulesRequest));
 
     }
 
+    @ApiOperation(value = "Search Stay Windows",
+            notes = "Earliest stays of the given number of nights within a date range", tags = { "schedules" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Request Sent", response=WindowSearchResponse.class )  })
+    @PostMapping("/available/windows")
+    public WindowSearchResponse availableWindows(@RequestBody WindowSearchRequest windowSearchRequest) {
+
+        return campsiteService.searchWindows(windowSearchRequest);
+    }
+
+    @ApiOperation(value = "Stream Availability Changes",
+            notes = "Server-sent events with the dates whose status changed, resumable with Last-Event-ID",
+            tags = { "schedules" })
+    @GetMapping(value = "/available/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter availableStream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+
+        return availabilityFeed.subscribe(lastEventId);
+    }
+
     @ApiOperation(value = "Create Reservation", notes = "Create Reservation", tags = { "reserve" })
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Request Sent", response=ReservationResponse.class )  })
     @PostMapping("/reserve")
     public ReservationResponse reserve(@RequestBody ReservationRequest request) {
 
-            return campsiteService.reserve(request);
+        if (reservationBatcher.isEnabled()) {
+            return reservationBatcher.reserve(request);
+        }
+
+        return campsiteService.reserve(request);
+    }
+
+    @ApiOperation(value = "Hold Dates", notes = "Hold dates while the reservation is being filled in", tags = { "hold" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Request Sent", response=HoldResponse.class )  })
+    @PostMapping("/hold")
+    public HoldResponse hold(@RequestBody HoldRequest request) {
+
+        HoldResponse response = campsiteService.hold(request);
+
+        return response;
+    }
+
+    @ApiOperation(value = "Confirm Hold", notes = "Confirm a hold into a reservation", tags = { "confirm" })
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Request Sent", response=ConfirmationResponse.class )  })
+    @PostMapping("/confirm")
+    public ConfirmationResponse confirm(@RequestBody ConfirmationRequest request) {
+
+        ConfirmationResponse response = campsiteService.confirm(request);
+
+        return response;
     }
 
     @ApiOperation(value = "Modify Reservation", notes = "Modify Reservation", tags = { "modify" })
@@ -109,4 +272,61 @@ public class CampsiteController {
         return response;
     }
 
+    /**
+     * Returns true if the If-None-Match header lists eTag or is "*".  Weak tags compare equal to strong ones.
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calendar responses may be stored by browsers and CDNs but must be revalidated against the ETag.
+     */
+    private static <T> ResponseEntity<T> ok(String eTag, T body) {
+        return ResponseEntity.ok().eTag(eTag).cacheControl(CacheControl.noCache()).body(body);
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CacheControl.noCache()).build();
+    }
+
+    /**
+     * Writes each row as one line of JSON as soon as it is read.
+     */
+    private <T> Consumer<T> ndjson(OutputStream out) {
+        return row -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
 }
@@ -0,0 +1,194 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.AvailabilityDelta;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pushes committed schedule changes to GET /available/stream subscribers as server-sent events.
+ *
+ * Every delta gets the next sequence number and an event id of "epoch-sequence", where epoch
+ * is the startup time.  The last replaySize deltas are kept so a client reconnecting with
+ * Last-Event-ID only receives what it missed; a client whose id is from another epoch or
+ * older than the replay buffer receives a "reset" event and should reload /available.
+ *
+ * Sends run on a single feed thread so slow clients never hold up a commit, and every
+ * subscriber sees the deltas in sequence order.
+ */
+@Slf4j
+@Component
+public class AvailabilityFeed {
+
+    static final String AVAILABILITY = "availability";
+
+    static final String RESET = "reset";
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "availability-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private final Deque<AvailabilityDelta> replay = new ArrayDeque<>();
+
+    private long sequence;
+
+    private Integer replaySize;
+
+    private Long timeoutMillis;
+
+    @Autowired
+    public AvailabilityFeed(@Value("${upgrade.campsite.feed.replaySize}") Integer replaySize,
+                            @Value("${upgrade.campsite.feed.timeoutMillis}") Long timeoutMillis) {
+        this.replaySize = replaySize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onScheduleChange(ScheduleChangeEvent event) {
+        if (event.getChanges().isEmpty()) {
+            return;
+        }
+        AvailabilityDelta delta = AvailabilityDelta.builder()
+                .sequence(++sequence)
+                .changes(event.getChanges())
+                .remaining(event.getRemaining())
+                .build();
+        replay.addLast(delta);
+        if (replay.size() > replaySize) {
+            replay.removeFirst();
+        }
+        sender.execute(() -> subscribers.forEach(subscriber -> send(subscriber, delta)));
+    }
+
+    /**
+     * @param lastEventId the Last-Event-ID sent by a reconnecting client, or null
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(ex -> subscribers.remove(subscriber));
+        sender.execute(() -> {
+            List<AvailabilityDelta> missed;
+            synchronized (this) {
+                missed = lastEventId == null ? new ArrayList<>() : since(lastEventId);
+                subscriber.lastSequence = missed == null || missed.isEmpty()
+                        ? sequence
+                        : missed.get(0).getSequence() - 1;
+            }
+            subscribers.add(subscriber);
+            if (missed == null) {
+                reset(subscriber);
+            } else {
+                missed.forEach(delta -> send(subscriber, delta));
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Returns the deltas after lastEventId, or null when they are no longer all retained.
+     */
+    synchronized List<AvailabilityDelta> since(String lastEventId) {
+        long after;
+        String[] parts = lastEventId.split("-");
+        try {
+            if (parts.length != 2 || Long.parseLong(parts[0]) != epoch) {
+                return null;
+            }
+            after = Long.parseLong(parts[1]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if (after > sequence || after < firstRetained() - 1) {
+            return null;
+        }
+        List<AvailabilityDelta> missed = new ArrayList<>();
+        for (AvailabilityDelta delta : replay) {
+            if (delta.getSequence() > after) {
+                missed.add(delta);
+            }
+        }
+        return missed;
+    }
+
+    public synchronized String currentEventId() {
+        return eventId(sequence);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private long firstRetained() {
+        return replay.isEmpty() ? sequence + 1 : replay.getFirst().getSequence();
+    }
+
+    private void send(Subscriber subscriber, AvailabilityDelta delta) {
+        if (delta.getSequence() <= subscriber.lastSequence) {
+            return;
+        }
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .id(eventId(delta.getSequence()))
+                    .name(AVAILABILITY)
+                    .data(delta, MediaType.APPLICATION_JSON));
+            subscriber.lastSequence = delta.getSequence();
+        } catch (IOException | IllegalStateException ex) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(ex);
+        }
+    }
+
+    private void reset(Subscriber subscriber) {
+        String eventId = eventId(subscriber.lastSequence);
+        try {
+            subscriber.emitter.send(SseEmitter.event().id(eventId).name(RESET).data(eventId));
+        } catch (IOException | IllegalStateException ex) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(ex);
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        // only touched on the feed thread
+        private long lastSequence;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
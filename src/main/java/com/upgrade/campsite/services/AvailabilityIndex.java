@@ -0,0 +1,172 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of AVAILABLE schedule dates, one bit per day keyed by epoch day, and of
+ * the units left on each of them.
+ *
+ * Readers work on an immutable snapshot and never touch the database.  Changes are
+ * applied copy-on-write after the owning transaction commits, so the index only ever
+ * reflects committed schedules.
+ */
+@Slf4j
+@Component
+public class AvailabilityIndex {
+
+    private CalendarStore calendarStore;
+
+    private CalendarJournal calendarJournal;
+
+    private volatile Snapshot snapshot = new Snapshot(0L, new BitSet(), new int[0]);
+
+    @Autowired
+    public AvailabilityIndex(CalendarStore calendarStore, CalendarJournal calendarJournal) {
+        this.calendarStore = calendarStore;
+        this.calendarJournal = calendarJournal;
+    }
+
+    /**
+     * Loads the index from the CalendarStore, or from CalendarJournal when it is enabled.
+     * Runs once the context is refreshed so that the dates inserted by
+     * CampsiteApplication.postConstruct() are included.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void reload() {
+        List<DateCapacity> capacities = calendarJournal.capacities()
+                .map(all -> all.stream().filter(c -> c.getRemaining() > 0).collect(Collectors.toList()))
+                .orElseGet(calendarStore::availableCapacity);
+        long baseEpochDay = capacities.stream().mapToLong(c -> c.getScheduleDate().toEpochDay()).min().orElse(0L);
+        long lastEpochDay = capacities.stream().mapToLong(c -> c.getScheduleDate().toEpochDay()).max().orElse(-1L);
+        BitSet days = new BitSet();
+        int[] remaining = new int[(int) (lastEpochDay - baseEpochDay + 1)];
+        for (DateCapacity capacity : capacities) {
+            int index = (int) (capacity.getScheduleDate().toEpochDay() - baseEpochDay);
+            days.set(index);
+            remaining[index] = capacity.getRemaining();
+        }
+        snapshot = new Snapshot(baseEpochDay, days, remaining);
+        log.info("Availability index loaded with " + capacities.size() + " available dates");
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleChange(ScheduleChangeEvent event) {
+        apply(event.getRemaining());
+    }
+
+    public boolean isAvailable(LocalDate date) {
+        return snapshot.isAvailable(date.toEpochDay());
+    }
+
+    /**
+     * Returns the units left on each available date between startDate and endDate inclusive.
+     */
+    public Map<LocalDate, Integer> remainingCapacity(LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, Integer> remainingCapacity = new LinkedHashMap<>();
+        if (startDate == null || endDate == null) {
+            return remainingCapacity;
+        }
+        Snapshot current = snapshot;
+        long last = endDate.toEpochDay() - current.baseEpochDay;
+        int ii = current.days.nextSetBit((int) Math.max(0L, startDate.toEpochDay() - current.baseEpochDay));
+        while (ii >= 0 && ii <= last) {
+            remainingCapacity.put(LocalDate.ofEpochDay(current.baseEpochDay + ii), current.remaining[ii]);
+            ii = current.days.nextSetBit(ii + 1);
+        }
+        return remainingCapacity;
+    }
+
+    /**
+     * Returns the available dates between startDate and endDate inclusive, in ascending order.
+     */
+    public List<LocalDate> availableDates(LocalDate startDate, LocalDate endDate) {
+        List<LocalDate> availableDates = new ArrayList<>();
+        if (startDate == null || endDate == null) {
+            return availableDates;
+        }
+        Snapshot current = snapshot;
+        long last = endDate.toEpochDay() - current.baseEpochDay;
+        int ii = current.days.nextSetBit((int) Math.max(0L, startDate.toEpochDay() - current.baseEpochDay));
+        while (ii >= 0 && ii <= last) {
+            availableDates.add(LocalDate.ofEpochDay(current.baseEpochDay + ii));
+            ii = current.days.nextSetBit(ii + 1);
+        }
+        return availableDates;
+    }
+
+    /**
+     * @param changes the units left on each changed date
+     */
+    synchronized void apply(Map<LocalDate, Integer> changes) {
+        Snapshot current = snapshot;
+        long baseEpochDay = current.days.isEmpty() ? Long.MAX_VALUE : current.baseEpochDay;
+        long lastEpochDay = current.days.isEmpty() ? Long.MIN_VALUE : current.baseEpochDay + current.days.length() - 1;
+        for (Map.Entry<LocalDate, Integer> change : changes.entrySet()) {
+            if (change.getValue() > 0) {
+                baseEpochDay = Math.min(baseEpochDay, change.getKey().toEpochDay());
+                lastEpochDay = Math.max(lastEpochDay, change.getKey().toEpochDay());
+            }
+        }
+        if (baseEpochDay == Long.MAX_VALUE) {
+            baseEpochDay = current.baseEpochDay;
+            lastEpochDay = baseEpochDay - 1;
+        }
+
+        BitSet days = new BitSet();
+        int[] remaining = new int[(int) (lastEpochDay - baseEpochDay + 1)];
+        int shift = (int) (current.baseEpochDay - baseEpochDay);
+        for (int ii = current.days.nextSetBit(0); ii >= 0; ii = current.days.nextSetBit(ii + 1)) {
+            days.set(ii + shift);
+            remaining[ii + shift] = current.remaining[ii];
+        }
+
+        for (Map.Entry<LocalDate, Integer> change : changes.entrySet()) {
+            long index = change.getKey().toEpochDay() - baseEpochDay;
+            if (change.getValue() > 0) {
+                days.set((int) index);
+                remaining[(int) index] = change.getValue();
+            } else if (index >= 0 && index < remaining.length) {
+                days.clear((int) index);
+                remaining[(int) index] = 0;
+            }
+        }
+        snapshot = new Snapshot(baseEpochDay, days, remaining);
+    }
+
+    private static final class Snapshot {
+
+        private final long baseEpochDay;
+
+        private final BitSet days;
+
+        private final int[] remaining;
+
+        private Snapshot(long baseEpochDay, BitSet days, int[] remaining) {
+            this.baseEpochDay = baseEpochDay;
+            this.days = days;
+            this.remaining = remaining;
+        }
+
+        private boolean isAvailable(long epochDay) {
+            long index = epochDay - baseEpochDay;
+            return index >= 0 && index <= Integer.MAX_VALUE && days.get((int) index);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.upgrade.campsite.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.campsite.dto.SchedulesRequest;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized POST /available responses for the hot windows: the bookable window
+ * (minimumDaysAdvance to maximumDaysAdvance days ahead), the current month and the next month.
+ *
+ * A commit that changes a date inside a window drops that window before AvailabilityIndex is
+ * updated, and the window is rebuilt from the index on a background thread afterwards.  A rebuild
+ * is only kept if no commit was in flight while it read the index, so a stored body is never
+ * older than the index.  The windows move with the calendar day on upgrade.campsite.availabilityCache.cron.
+ */
+@Slf4j
+@Component
+public class AvailabilityResponseCache {
+
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "availability-response-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CampsiteService campsiteService;
+
+    private ObjectMapper objectMapper;
+
+    private Integer minimumDaysAdvance;
+
+    private Integer maximumDaysAdvance;
+
+    private volatile Map<SchedulesRequest, Body> bodies = Collections.emptyMap();
+
+    private long generation;
+
+    private int pending;
+
+    @Autowired
+    public AvailabilityResponseCache(CampsiteService campsiteService,
+                                     ObjectMapper objectMapper,
+                                     @Value("${upgrade.campsite.minimumDaysAdvance}") Integer minimumDaysAdvance,
+                                     @Value("${upgrade.campsite.maximumDaysAdvance}") Integer maximumDaysAdvance) {
+        this.campsiteService = campsiteService;
+        this.objectMapper = objectMapper;
+        this.minimumDaysAdvance = minimumDaysAdvance;
+        this.maximumDaysAdvance = maximumDaysAdvance;
+    }
+
+    /**
+     * Returns the serialized response for schedulesRequest, or null if it is not a hot window or is being rebuilt.
+     */
+    public Body get(SchedulesRequest schedulesRequest) {
+        return bodies.get(schedulesRequest);
+    }
+
+    /**
+     * Drops the windows containing a changed date.  Runs before AvailabilityIndex applies the change.
+     */
+    @Order(-1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void beforeScheduleChange(ScheduleChangeEvent event) {
+        Map<SchedulesRequest, Body> kept = new HashMap<>(bodies);
+        kept.keySet().removeIf(window -> event.getChanges().keySet().stream().anyMatch(date ->
+                !date.isBefore(window.getStartDate()) && !date.isAfter(window.getEndDate())));
+        bodies = Collections.unmodifiableMap(kept);
+        generation++;
+        pending++;
+    }
+
+    @Order(2)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void afterScheduleChange(ScheduleChangeEvent event) {
+        pending--;
+        builder.execute(this::fill);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        builder.execute(this::fill);
+    }
+
+    /**
+     * Moves the hot windows to the current day.
+     */
+    @Scheduled(cron = "${upgrade.campsite.availabilityCache.cron}")
+    public void roll() {
+        builder.execute(() -> {
+            synchronized (this) {
+                Map<SchedulesRequest, Body> kept = new HashMap<>(bodies);
+                kept.keySet().retainAll(windows(LocalDate.now()));
+                bodies = Collections.unmodifiableMap(kept);
+            }
+            fill();
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    public int size() {
+        return bodies.size();
+    }
+
+    /**
+     * Builds the hot windows that are missing.  Runs on the builder thread.
+     */
+    void fill() {
+        long built;
+        synchronized (this) {
+            if (pending > 0) {
+                // the last of the commits in flight will call fill() again
+                return;
+            }
+            built = generation;
+        }
+
+        Map<SchedulesRequest, Body> fresh = new HashMap<>();
+        for (SchedulesRequest window : windows(LocalDate.now())) {
+            if (!bodies.containsKey(window)) {
+                fresh.put(window, serialize(window));
+            }
+        }
+
+        synchronized (this) {
+            if (generation != built || fresh.isEmpty()) {
+                return;
+            }
+            Map<SchedulesRequest, Body> merged = new HashMap<>(bodies);
+            merged.putAll(fresh);
+            bodies = Collections.unmodifiableMap(merged);
+        }
+        log.debug("Cached /available responses for " + fresh.keySet());
+    }
+
+    List<SchedulesRequest> windows(LocalDate today) {
+        List<SchedulesRequest> windows = new ArrayList<>();
+        windows.add(SchedulesRequest.builder()
+                .startDate(today.plusDays(minimumDaysAdvance))
+                .endDate(today.plusDays(maximumDaysAdvance))
+                .build());
+        LocalDate month = today.withDayOfMonth(1);
+        for (int ii = 0; ii < 2; ii++, month = month.plusMonths(1L)) {
+            windows.add(SchedulesRequest.builder()
+                    .startDate(month)
+                    .endDate(month.withDayOfMonth(month.lengthOfMonth()))
+                    .build());
+        }
+        return windows;
+    }
+
+    private Body serialize(SchedulesRequest window) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(campsiteService.available(window));
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 32);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(json);
+            }
+            return new Body(json, gzip.toByteArray());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * A SchedulesResponse as written by Jackson, plain and gzip-encoded.
+     */
+    public static final class Body {
+
+        private final byte[] json;
+
+        private final byte[] gzip;
+
+        private Body(byte[] json, byte[] gzip) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public byte[] json() {
+            return json;
+        }
+
+        public byte[] gzip() {
+            return gzip;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.upgrade.campsite.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calendar write paths (reserve, cancel, modify, hold, confirm, the release of
+ * expired holds, initialize and archiving) in their own transaction.
+ *
+ * The in-JVM DateLockManager locks for the nights being touched are taken before the
+ * transaction begins and released after it completes, so overlapping bookings queue
+ * in memory while disjoint ones run in parallel.  Since the after-commit listeners run
+ * before the locks are released, they see the changes to a date in commit order.
+ *
+ * Cancel, modify and confirm only know the nights of a booking from a possibly stale read
+ * (ReservationCache), so once the transaction has begun they read them again, and if another
+ * write moved the booking onto nights whose locks are not held, the transaction is rolled back
+ * and the locks are taken again for the current nights.
+ *
+ * A transaction that fails with an optimistic locking conflict is retried from scratch,
+ * up to maxAttempts, sleeping a random ("full jitter") delay bounded by an exponentially
+ * growing backoff between attempts.  Retries are counted in the
+ * campsite.booking.retries and campsite.booking.retries.exhausted metrics.
+ *
+ * When called inside an existing transaction (e.g. modify() calling cancel()) the work
+ * simply joins it, since only the outermost caller can safely retry.
+ */
+@Slf4j
+@Component
+public class BookingTransactions {
+
+    private TransactionTemplate transactionTemplate;
+
+    private DateLockManager dateLockManager;
+
+    private MeterRegistry meterRegistry;
+
+    private Integer maxAttempts;
+
+    private Long initialBackoffMillis;
+
+    private Long maxBackoffMillis;
+
+    @Autowired
+    public BookingTransactions(PlatformTransactionManager transactionManager,
+                               DateLockManager dateLockManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${upgrade.campsite.retry.maxAttempts}") Integer maxAttempts,
+                               @Value("${upgrade.campsite.retry.initialBackoffMillis}") Long initialBackoffMillis,
+                               @Value("${upgrade.campsite.retry.maxBackoffMillis}") Long maxBackoffMillis) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dateLockManager = dateLockManager;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * @param nights supplies the nights to lock; only evaluated when a new transaction is started
+     */
+    public <T> T execute(String operation, Supplier<Collection<LocalDate>> nights, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+        return dateLockManager.withLocks(nights.get(), () -> executeWithRetry(operation, action));
+    }
+
+    /**
+     * Like execute(), for writes to an existing booking whose nights are only known from a hint.
+     * @param hint supplies the nights to lock first, e.g. from ReservationCache
+     * @param nights supplies the nights the write touches; read again inside the transaction, which
+     *               is restarted under the locks for them whenever the locks held do not cover them
+     */
+    public <T> T execute(String operation, Supplier<Collection<LocalDate>> hint,
+                         Supplier<Collection<LocalDate>> nights, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+        Collection<LocalDate> locked = hint.get();
+        for (int attempt = 1; ; attempt++) {
+            Collection<LocalDate> lockedNights = locked;
+            Supplier<T> checkedAction = () -> {
+                Collection<LocalDate> current = nights.get();
+                if (!dateLockManager.covers(lockedNights, current)) {
+                    throw new NightsChangedException(current);
+                }
+                return action.get();
+            };
+            try {
+                return dateLockManager.withLocks(lockedNights, () -> executeWithRetry(operation, checkedAction));
+            } catch (NightsChangedException ex) {
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("campsite.booking.retries.exhausted", "operation", operation).increment();
+                    throw new CannotAcquireLockException(operation + " gave up after the nights of its booking changed "
+                            + attempt + " times");
+                }
+                meterRegistry.counter("campsite.booking.retries", "operation", operation).increment();
+                log.info(operation + " attempt " + attempt + " found its booking moved to unlocked nights, relocking");
+                locked = ex.nights;
+            }
+        }
+    }
+
+    private <T> T executeWithRetry(String operation, Supplier<T> action) {
+        int attempt = 1;
+        while (true) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (OptimisticLockingFailureException ex) {
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("campsite.booking.retries.exhausted", "operation", operation).increment();
+                    throw ex;
+                }
+                meterRegistry.counter("campsite.booking.retries", "operation", operation).increment();
+                log.info(operation + " attempt " + attempt + " hit an optimistic locking conflict, retrying");
+                backoff(attempt);
+                attempt++;
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", ex);
+        }
+    }
+
+    /**
+     * Rolls back a transaction whose booking is no longer on the nights locked for it.
+     */
+    private static class NightsChangedException extends RuntimeException {
+        private final Collection<LocalDate> nights;
+
+        NightsChangedException(Collection<LocalDate> nights) {
+            super(null, null, false, false);
+            this.nights = nights;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.entities.ReservationArchiveRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.events.ReservationChangeEvent;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Moves cold rows out of the tables the booking paths lock and scan, so that their size follows the
+ * bookable horizon rather than the age of the service.
+ *
+ * Every night on upgrade.campsite.archive.cron, schedule dates older than upgrade.campsite.archive.retentionDays
+ * (with their allocations) are moved through CalendarStore.archiveBefore(), and reservations that checked out
+ * or were cancelled before then are copied to RESERVATION_ARCHIVE and deleted.  Each batch of
+ * upgrade.campsite.archive.batchSize rows is its own short transaction, which publishes the archived dates as
+ * removed in a ScheduleChangeEvent so that the in-memory indexes drop them and CalendarVersion advances.
+ * Archived rows are counted in the campsite.archive.rows metric.
+ */
+@Slf4j
+@Component
+public class CalendarArchiver {
+
+    private TransactionTemplate transactionTemplate;
+
+    private BookingTransactions bookingTransactions;
+
+    private CalendarStore calendarStore;
+
+    private ReservationsRepository reservationsRepository;
+
+    private ReservationArchiveRepository reservationArchiveRepository;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private Long retentionDays;
+
+    private Integer batchSize;
+
+    private Counter archivedSchedules;
+
+    private Counter archivedReservations;
+
+    @Autowired
+    public CalendarArchiver(PlatformTransactionManager transactionManager,
+                            BookingTransactions bookingTransactions,
+                            CalendarStore calendarStore,
+                            ReservationsRepository reservationsRepository,
+                            ReservationArchiveRepository reservationArchiveRepository,
+                            ApplicationEventPublisher eventPublisher,
+                            MeterRegistry meterRegistry,
+                            @Value("${upgrade.campsite.archive.retentionDays}") Long retentionDays,
+                            @Value("${upgrade.campsite.archive.batchSize}") Integer batchSize) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.bookingTransactions = bookingTransactions;
+        this.calendarStore = calendarStore;
+        this.reservationsRepository = reservationsRepository;
+        this.reservationArchiveRepository = reservationArchiveRepository;
+        this.eventPublisher = eventPublisher;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.archivedSchedules = meterRegistry.counter("campsite.archive.rows", "table", "schedule");
+        this.archivedReservations = meterRegistry.counter("campsite.archive.rows", "table", "reservation");
+    }
+
+    @Scheduled(cron = "${upgrade.campsite.archive.cron}")
+    public void archive() {
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        int schedules = archiveSchedules(cutoff);
+        int reservations = archiveReservations(cutoff);
+        log.info("Archived " + schedules + " schedules and " + reservations + " reservations before " + cutoff);
+    }
+
+    /**
+     * Archives the schedule dates before cutoff.  A batch only takes dates before the first date
+     * plus batchSize days, so that it holds the date locks of every date it may move.
+     * @return the number of dates archived
+     */
+    public int archiveSchedules(LocalDate cutoff) {
+        int archived = 0;
+        for (;;) {
+            Optional<LocalDate> firstDate = calendarStore.firstDate();
+            if (!firstDate.isPresent() || !firstDate.get().isBefore(cutoff)) {
+                return archived;
+            }
+            LocalDate end = Collections.min(Arrays.asList(cutoff, firstDate.get().plusDays(batchSize)));
+            List<LocalDate> dates = bookingTransactions.execute("archive",
+                    () -> CampsiteService.nights(firstDate.get(), end),
+                    () -> {
+                        if (!calendarStore.firstDate().equals(firstDate)) {
+                            // an earlier date was added meanwhile, start over from it
+                            return Collections.<LocalDate>emptyList();
+                        }
+                        List<LocalDate> batch = calendarStore.archiveBefore(end, batchSize);
+                        eventPublisher.publishEvent(ScheduleChangeEvent.removed(batch));
+                        return batch;
+                    });
+            archived += dates.size();
+            archivedSchedules.increment(dates.size());
+        }
+    }
+
+    /**
+     * Archives the reservations that checked out on or before cutoff or were cancelled before it.
+     * @return the number of reservations archived
+     */
+    public int archiveReservations(LocalDate cutoff) {
+        int archived = 0;
+        for (;;) {
+            List<String> bookingIds = transactionTemplate.execute(status -> {
+                List<String> batch = reservationsRepository.findArchivableBookingIds(cutoff,
+                        cutoff.atStartOfDay(), PageRequest.of(0, batchSize));
+                if (!batch.isEmpty()) {
+                    reservationArchiveRepository.archive(batch, LocalDateTime.now());
+                    reservationsRepository.deleteByBookingIds(batch);
+                    eventPublisher.publishEvent(new ReservationChangeEvent(batch));
+                }
+                return batch;
+            });
+            if (bookingIds.isEmpty()) {
+                return archived;
+            }
+            archived += bookingIds.size();
+            archivedReservations.increment(bookingIds.size());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.InitializeResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * Keeps the bookable horizon rolling forward.  Runs at startup and then daily on
+ * upgrade.campsite.horizon.cron, and only initializes the dates after the last
+ * existing schedule, so each run costs O(new days) instead of O(horizon).
+ */
+@Slf4j
+@Component
+public class CalendarHorizonExtender {
+
+    private CampsiteService campsiteService;
+
+    private CalendarStore calendarStore;
+
+    private Long horizonMonths;
+
+    @Autowired
+    public CalendarHorizonExtender(CampsiteService campsiteService,
+                                   CalendarStore calendarStore,
+                                   @Value("${upgrade.campsite.horizon.months}") Long horizonMonths) {
+        this.campsiteService = campsiteService;
+        this.calendarStore = calendarStore;
+        this.horizonMonths = horizonMonths;
+    }
+
+    @Scheduled(cron = "${upgrade.campsite.horizon.cron}")
+    public InitializeResponse extend() {
+        LocalDate availableStartDate = LocalDate.now().plusDays(1L);
+        LocalDate availableEndDate = availableStartDate.plusMonths(horizonMonths);
+
+        Optional<LocalDate> lastScheduleDate = calendarStore.lastDate();
+        if (lastScheduleDate.isPresent() && !lastScheduleDate.get().isBefore(availableStartDate)) {
+            availableStartDate = lastScheduleDate.get().plusDays(1L);
+        }
+
+        InitializeRequest initializeRequest = InitializeRequest.builder()
+                .availableStartDate(availableStartDate)
+                .availableEndDate(availableEndDate)
+                .build();
+        if (availableStartDate.isAfter(availableEndDate)) {
+            return InitializeResponse.builder().initializeRequest(initializeRequest).build();
+        }
+
+        log.info("Extending the calendar from " + availableStartDate + " to " + availableEndDate);
+        return campsiteService.initialize(initializeRequest);
+    }
+}
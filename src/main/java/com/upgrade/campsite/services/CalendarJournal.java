@@ -0,0 +1,350 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.CalendarStoreType;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Optional write-ahead journal of the units left on every schedule date (upgrade.campsite.journal.enabled).
+ *
+ * Each committed ScheduleChangeEvent is appended to a memory-mapped file of upgrade.campsite.journal.sizeBytes
+ * as one checksummed record and forced to disk.  A compact binary snapshot of the whole calendar is written
+ * every upgrade.campsite.journal.snapshotMillis, when the journal is full and at shutdown, after which the
+ * journal starts over.
+ *
+ * At startup the snapshot is loaded and the journal replayed up to its first torn or corrupt record.  Dates
+ * created after the last journaled one are read from the database, and the result is checked against the
+ * number of dates, the sum of units left in SCHEDULE and that sum weighted by date, so a unit moved between
+ * two dates is noticed too.  AvailabilityIndex and FreeWindowIndex then load
+ * from capacities() instead of querying every schedule row.  If the check fails (for example a change
+ * committed by a process that crashed before journaling it) the calendar is read from the database instead.
+ *
+ * The database remains the system of record; the journal only replaces the startup reads.  It is only
+ * used with the JPA calendar store, since the in-memory one starts empty anyway.
+ */
+@Slf4j
+@Component
+public class CalendarJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x43414c31;
+
+    private static final int NO_SCHEDULE = -1;
+
+    private ScheduleRepository scheduleRepository;
+
+    private Boolean enabled;
+
+    private Path directory;
+
+    private Integer sizeBytes;
+
+    private final TreeMap<Long, Integer> remaining = new TreeMap<>();
+
+    private long sequence;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer journal;
+
+    private boolean recovered;
+
+    @Autowired
+    public CalendarJournal(ScheduleRepository scheduleRepository,
+                           @Value("${upgrade.campsite.calendarStore}") CalendarStoreType calendarStoreType,
+                           @Value("${upgrade.campsite.journal.enabled}") Boolean enabled,
+                           @Value("${upgrade.campsite.journal.directory}") String directory,
+                           @Value("${upgrade.campsite.journal.sizeBytes}") Integer sizeBytes) {
+        this.scheduleRepository = scheduleRepository;
+        this.enabled = enabled && calendarStoreType == CalendarStoreType.JPA;
+        this.directory = Paths.get(directory);
+        this.sizeBytes = sizeBytes;
+    }
+
+    /**
+     * Restores the calendar before AvailabilityIndex and FreeWindowIndex load it.
+     */
+    @Order(-1)
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void recover() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            remaining.clear();
+            sequence = 0L;
+            boolean fromSnapshot = readSnapshot();
+            int replayed = replay();
+            if (!remaining.isEmpty()) {
+                LocalDate lastDate = LocalDate.ofEpochDay(remaining.lastKey());
+                put(scheduleRepository.findCapacityAfter(lastDate));
+                // dates moved out by CalendarArchiver
+                LocalDate firstDate = scheduleRepository.findMinScheduleDate();
+                remaining.headMap(firstDate == null ? Long.MAX_VALUE : firstDate.toEpochDay()).clear();
+            }
+            if (!matchesDatabase()) {
+                if (fromSnapshot || replayed > 0) {
+                    log.warn("Calendar journal does not match SCHEDULE, reloading it from the database");
+                }
+                remaining.clear();
+                put(scheduleRepository.findAllCapacity());
+            } else {
+                log.info("Calendar restored from journal: snapshot " + fromSnapshot + ", "
+                        + replayed + " journal records replayed");
+            }
+            snapshot();
+            recovered = true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The units left on every schedule date, or empty if the journal is disabled.
+     */
+    public synchronized Optional<List<DateCapacity>> capacities() {
+        if (!recovered) {
+            return Optional.empty();
+        }
+        List<DateCapacity> capacities = new ArrayList<>(remaining.size());
+        remaining.forEach((epochDay, units) -> capacities.add(new DateCapacity(LocalDate.ofEpochDay(epochDay), units)));
+        return Optional.of(capacities);
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onScheduleChange(ScheduleChangeEvent event) {
+        if (!recovered || event.getRemaining().isEmpty()) {
+            return;
+        }
+        Map<LocalDate, Integer> changes = new TreeMap<>(event.getRemaining());
+        event.getRemaining().forEach((date, units) -> remaining.put(date.toEpochDay(), units));
+        event.getRemoved().forEach(date -> {
+            remaining.remove(date.toEpochDay());
+            changes.put(date, NO_SCHEDULE);
+        });
+        try {
+            append(changes);
+        } catch (IOException ex) {
+            log.error("Calendar journal append failed", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${upgrade.campsite.journal.snapshotMillis}")
+    public synchronized void scheduledSnapshot() throws IOException {
+        if (recovered && journal.position() > 0) {
+            snapshot();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (recovered) {
+            snapshot();
+            channel.close();
+            recovered = false;
+        }
+    }
+
+    /**
+     * Record: int payload length, payload (long sequence, int count, count x (long epoch day, int units,
+     * -1 for a removed date)), int CRC32 of the payload.  A zero length marks the end of the journal.
+     */
+    private void append(Map<LocalDate, Integer> changes) throws IOException {
+        int length = 8 + 4 + changes.size() * 12;
+        if (journal.position() + 4 + length + 4 + 4 > journal.capacity()) {
+            // the snapshot already includes this change
+            snapshot();
+            return;
+        }
+        int start = journal.position();
+        journal.putInt(length);
+        journal.putLong(++sequence);
+        journal.putInt(changes.size());
+        changes.forEach((date, units) -> {
+            journal.putLong(date.toEpochDay());
+            journal.putInt(units);
+        });
+        CRC32 crc = new CRC32();
+        for (int ii = start + 4; ii < start + 4 + length; ii++) {
+            crc.update(journal.get(ii));
+        }
+        journal.putInt((int) crc.getValue());
+        journal.putInt(journal.position(), 0);
+        journal.force();
+    }
+
+    private int replay() throws IOException {
+        openJournal();
+        int replayed = 0;
+        long lastSequence = 0L;
+        while (journal.remaining() >= 4) {
+            int start = journal.position();
+            int length = journal.getInt();
+            if (length < 12 || length > journal.remaining() - 4) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            for (int ii = start + 4; ii < start + 4 + length; ii++) {
+                crc.update(journal.get(ii));
+            }
+            if ((int) crc.getValue() != journal.getInt(start + 4 + length)) {
+                log.warn("Calendar journal record at " + start + " is corrupt, replay stops there");
+                break;
+            }
+            long recordSequence = journal.getLong();
+            if (recordSequence <= lastSequence) {
+                break;
+            }
+            int count = journal.getInt();
+            for (int ii = 0; ii < count; ii++) {
+                long epochDay = journal.getLong();
+                int units = journal.getInt();
+                if (recordSequence > sequence && units == NO_SCHEDULE) {
+                    remaining.remove(epochDay);
+                } else if (recordSequence > sequence) {
+                    remaining.put(epochDay, units);
+                }
+            }
+            journal.getInt();
+            if (recordSequence > sequence) {
+                replayed++;
+            }
+            lastSequence = recordSequence;
+        }
+        sequence = Math.max(sequence, lastSequence);
+        return replayed;
+    }
+
+    /**
+     * Snapshot: int magic, long sequence, long first epoch day, int days, days x int units
+     * (-1 for a day without a schedule), long CRC32 of everything before it.
+     */
+    private void snapshot() throws IOException {
+        Path temporary = directory.resolve("calendar.snapshot.tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)), crc))) {
+            long first = remaining.isEmpty() ? 0L : remaining.firstKey();
+            long last = remaining.isEmpty() ? -1L : remaining.lastKey();
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeLong(first);
+            out.writeInt((int) (last - first + 1));
+            for (long epochDay = first; epochDay <= last; epochDay++) {
+                out.writeInt(remaining.getOrDefault(epochDay, NO_SCHEDULE));
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temporary, directory.resolve("calendar.snapshot"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        openJournal();
+        journal.putInt(0, 0);
+        journal.force();
+        journal.position(0);
+    }
+
+    private boolean readSnapshot() throws IOException {
+        Path path = directory.resolve("calendar.snapshot");
+        if (!Files.exists(path)) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                log.warn("Ignoring calendar snapshot with an unknown format");
+                return false;
+            }
+            long snapshotSequence = in.readLong();
+            long first = in.readLong();
+            int days = in.readInt();
+            Map<Long, Integer> loaded = new TreeMap<>();
+            for (int ii = 0; ii < days; ii++) {
+                int units = in.readInt();
+                if (units != NO_SCHEDULE) {
+                    loaded.put(first + ii, units);
+                }
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                log.warn("Ignoring corrupt calendar snapshot");
+                return false;
+            }
+            remaining.putAll(loaded);
+            sequence = snapshotSequence;
+            return true;
+        } catch (IOException ex) {
+            log.warn("Ignoring unreadable calendar snapshot", ex);
+            return false;
+        }
+    }
+
+    private void openJournal() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(directory.resolve("calendar.journal"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journal = channel.map(FileChannel.MapMode.READ_WRITE, 0L, sizeBytes);
+        }
+        journal.position(0);
+    }
+
+    private void put(List<DateCapacity> capacities) {
+        for (DateCapacity capacity : capacities) {
+            remaining.put(capacity.getScheduleDate().toEpochDay(), capacity.getRemaining());
+        }
+    }
+
+    private boolean matchesDatabase() {
+        long units = remaining.values().stream().mapToLong(Integer::longValue).sum();
+        long weighted = remaining.entrySet().stream()
+                .mapToLong(entry -> dateWeight(LocalDate.ofEpochDay(entry.getKey())) * entry.getValue())
+                .sum();
+        return remaining.size() == scheduleRepository.count()
+                && units == Optional.ofNullable(scheduleRepository.findTotalRemaining()).orElse(0L)
+                && weighted == Optional.ofNullable(scheduleRepository.findDateWeightedRemaining()).orElse(0L);
+    }
+
+    /**
+     * The weight ScheduleRepository.findDateWeightedRemaining() gives to date.
+     */
+    static long dateWeight(LocalDate date) {
+        return date.getYear() * 10000L + date.getMonthValue() * 100L + date.getDayOfMonth();
+    }
+}
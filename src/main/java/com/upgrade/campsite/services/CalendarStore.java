@@ -0,0 +1,94 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.dto.StayClaim;
+import com.upgrade.campsite.enums.ScheduleStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage of the calendar: the units of every schedule date and the nights allocated to each
+ * booking.  Selected with upgrade.campsite.calendarStore: JpaCalendarStore keeps them in the
+ * SCHEDULE and ALLOCATION tables, InMemoryCalendarStore in the heap.
+ *
+ * Writes are made inside the caller's transaction and must be undone if it rolls back.  Every write
+ * is made through BookingTransactions holding the DateLockManager locks of the dates it touches, from
+ * before the transaction begins until after it completes, so overlapping writes never interleave.
+ */
+public interface CalendarStore {
+
+    /**
+     * Creates the dates between startDate and endDate inclusive that do not exist yet,
+     * with the given number of units each.
+     * @return the dates created
+     */
+    List<LocalDate> addDates(LocalDate startDate, LocalDate endDate, int capacity);
+
+    Optional<LocalDate> firstDate();
+
+    Optional<LocalDate> lastDate();
+
+    /**
+     * Takes one unit of every night in [checkInDate, checkOutDate) for bookingId, all or none.
+     * @return the reasons the stay could not be claimed, empty if it was
+     */
+    List<String> claim(LocalDate checkInDate, LocalDate checkOutDate, String bookingId,
+                       ScheduleStatus status, LocalDateTime heldUntil);
+
+    /**
+     * Claims several stays as reserved nights, each all or none, in the given order.
+     * @return the reasons each stay could not be claimed, empty for the ones that were
+     */
+    List<List<String>> claimAll(List<StayClaim> claims);
+
+    /**
+     * Gives back the units bookingId holds on the given nights.
+     */
+    void release(String bookingId, Collection<LocalDate> dates);
+
+    /**
+     * The nights allocated to bookingId, held or reserved, in date order.
+     */
+    List<LocalDate> bookedNights(String bookingId);
+
+    List<LocalDate> heldNights(String bookingId);
+
+    /**
+     * Turns the unexpired nights held for bookingId into reserved nights.
+     * @return the number of nights confirmed
+     */
+    int confirmHold(String bookingId, LocalDateTime now);
+
+    /**
+     * Releases every night held for any of bookingIds that expired by now.
+     * @return one date per night released, so a date held by two bookings appears twice
+     */
+    List<LocalDate> releaseExpiredHolds(Collection<String> bookingIds, LocalDateTime now);
+
+    /**
+     * The heldUntil of every booking with held nights.
+     */
+    Map<String, LocalDateTime> holds();
+
+    /**
+     * The units left on each of the given dates that exist.
+     */
+    List<DateCapacity> remaining(Collection<LocalDate> dates);
+
+    /**
+     * The units left on every date that has one.
+     */
+    List<DateCapacity> availableCapacity();
+
+    /**
+     * Moves up to limit of the earliest dates before cutoff, and the nights allocated on them,
+     * out of the calendar.
+     * @return the dates moved, none once no date before cutoff is left
+     */
+    List<LocalDate> archiveBefore(LocalDate cutoff, int limit);
+}
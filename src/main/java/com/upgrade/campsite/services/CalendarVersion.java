@@ -0,0 +1,47 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global change counter of the calendar, advanced once for every committed ScheduleChangeEvent.
+ *
+ * It is advanced after AvailabilityIndex has applied the change, and readers take it before they
+ * read, so a response is never labelled with a newer version than the data it carries.
+ */
+@Component
+public class CalendarVersion {
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleChange(ScheduleChangeEvent event) {
+        version.incrementAndGet();
+    }
+
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * Returns the strong ETag of the calendar at the current version, e.g. "1593561600000-42".
+     * The startup epoch keeps tags issued before a restart from matching.
+     */
+    public String eTag() {
+        return "\"" + epoch + "-" + version.get() + "\"";
+    }
+
+    /**
+     * Returns the ETag of one view of the calendar, such as an availability window, at the current version.
+     */
+    public String eTag(String view) {
+        return "\"" + epoch + "-" + version.get() + "-" + view + "\"";
+    }
+}
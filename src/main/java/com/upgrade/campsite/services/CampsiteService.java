@@ -2,26 +2,55 @@ package com.upgrade.campsite.services;
 
 import com.upgrade.campsite.dto.*;
 import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationArchive;
+import com.upgrade.campsite.entities.ReservationArchiveRepository;
 import com.upgrade.campsite.entities.ReservationsRepository;
 import com.upgrade.campsite.entities.Schedule;
+import com.upgrade.campsite.entities.ScheduleArchive;
+import com.upgrade.campsite.entities.ScheduleArchiveRepository;
 import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.LockingMode;
 import com.upgrade.campsite.enums.ReservationStatus;
 import com.upgrade.campsite.enums.ScheduleStatus;
+import com.upgrade.campsite.events.ReservationChangeEvent;
+import com.upgrade.campsite.events.ReservationHistoryEvent;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
 import com.upgrade.campsite.exceptions.CancellationException;
+import com.upgrade.campsite.exceptions.ConfirmationException;
+import com.upgrade.campsite.exceptions.HoldException;
 import com.upgrade.campsite.exceptions.ModificationException;
 import com.upgrade.campsite.exceptions.ReservationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
@@ -33,6 +62,28 @@ public class CampsiteService {
 
     private ScheduleRepository scheduleRepository;
 
+    private ReservationArchiveRepository reservationArchiveRepository;
+
+    private ScheduleArchiveRepository scheduleArchiveRepository;
+
+    private CalendarStore calendarStore;
+
+    private AvailabilityIndex availabilityIndex;
+
+    private CalendarVersion calendarVersion;
+
+    private FreeWindowIndex freeWindowIndex;
+
+    private ReservationCache reservationCache;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private BookingTransactions bookingTransactions;
+
+    private HoldExpiryWheel holdExpiryWheel;
+
+    private LockingMode lockingMode;
+
     private Integer bookingIdLength;
 
     private Integer minimumDaysAdvance;
@@ -43,59 +94,251 @@ public class CampsiteService {
 
     private String modifiedBy;
 
+    private Long holdTtlSeconds;
+
+    private Integer maximumPageSize;
+
+    private Integer alternativesCount;
+
+    private Integer capacity;
+
+    private EntityManager entityManager;
+
+    private final ConcurrentMap<AvailabilityQuery, CompletableFuture<SchedulesResponse>> availabilityInFlight =
+            new ConcurrentHashMap<>();
+
     @Autowired
     public CampsiteService(IdService idService,
                            ReservationsRepository reservationsRepository,
                            ScheduleRepository scheduleRepository,
+                           ReservationArchiveRepository reservationArchiveRepository,
+                           ScheduleArchiveRepository scheduleArchiveRepository,
+                           CalendarStore calendarStore,
+                           AvailabilityIndex availabilityIndex,
+                           CalendarVersion calendarVersion,
+                           FreeWindowIndex freeWindowIndex,
+                           ReservationCache reservationCache,
+                           ApplicationEventPublisher eventPublisher,
+                           EntityManager entityManager,
+                           BookingTransactions bookingTransactions,
+                           HoldExpiryWheel holdExpiryWheel,
+                           @Value("${upgrade.campsite.lockingMode}") LockingMode lockingMode,
                            @Value("${upgrade.campsite.bookingIdLength}") String bookingIdLength,
                            @Value("${upgrade.campsite.minimumDaysAdvance}") Integer minimumDaysAdvance,
                            @Value("${upgrade.campsite.maximumDaysAdvance}") Integer maximumDaysAdvance,
                            @Value("${upgrade.campsite.maximumDays}") Integer maximumDays,
-                           @Value("${upgrade.campsite.modifiedBy}") String modifiedBy) {
+                           @Value("${upgrade.campsite.modifiedBy}") String modifiedBy,
+                           @Value("${upgrade.campsite.hold.ttlSeconds}") Long holdTtlSeconds,
+                           @Value("${upgrade.campsite.maximumPageSize}") Integer maximumPageSize,
+                           @Value("${upgrade.campsite.alternatives.count}") Integer alternativesCount,
+                           @Value("${upgrade.campsite.capacity}") Integer capacity) {
         this.idService = idService;
         this.reservationsRepository = reservationsRepository;
         this.scheduleRepository = scheduleRepository;
+        this.reservationArchiveRepository = reservationArchiveRepository;
+        this.scheduleArchiveRepository = scheduleArchiveRepository;
+        this.calendarStore = calendarStore;
+        this.availabilityIndex = availabilityIndex;
+        this.calendarVersion = calendarVersion;
+        this.freeWindowIndex = freeWindowIndex;
+        this.reservationCache = reservationCache;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+        this.bookingTransactions = bookingTransactions;
+        this.holdExpiryWheel = holdExpiryWheel;
+        this.lockingMode = lockingMode;
         this.bookingIdLength = Integer.valueOf(bookingIdLength);
         this.minimumDaysAdvance = minimumDaysAdvance;
         this.maximumDaysAdvance = maximumDaysAdvance;
         this.maximumDays = maximumDays;
         this.modifiedBy = modifiedBy;
+        this.holdTtlSeconds = holdTtlSeconds;
+        this.maximumPageSize = maximumPageSize;
+        this.alternativesCount = alternativesCount;
+        this.capacity = capacity;
     }
 
-    @Transactional
+    /*
+     * The read operations below use non-locking queries in read-only transactions so that
+     * they never bump @Version or wait on the pessimistic locks taken by the write paths.
+     */
+
+    @Transactional(readOnly = true)
     public Optional<Reservation> reservation(String bookingId) {
-        return reservationsRepository.findByBookingId(bookingId);
+        return reservationCache.reservation(bookingId);
+    }
+
+    /**
+     * Returns up to limit reservations with an id greater than afterId, in id order.
+     * The last id of a page is the afterId of the next one.
+     */
+    @Transactional(readOnly = true)
+    public List<Reservation> reservations(Long afterId, Integer limit) {
+        return reservationsRepository.findPage(afterId, PageRequest.of(0, pageSize(limit)));
+    }
+
+    /**
+     * Returns up to limit schedules with an id greater than afterId, in id order.
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> schedules(Long afterId, Integer limit) {
+        return scheduleRepository.findPage(afterId, PageRequest.of(0, pageSize(limit)));
+    }
+
+    /*
+     * The archive is only read by these methods, never by the booking paths.
+     */
+
+    @Transactional(readOnly = true)
+    public Optional<ReservationArchive> archivedReservation(String bookingId) {
+        return reservationArchiveRepository.findByBookingId(bookingId);
     }
 
-    @Transactional
-    public List<Reservation> reservations() {
-        return reservationsRepository.findAll();
+    /**
+     * Returns up to limit archived reservations with an id greater than afterId, in id order.
+     */
+    @Transactional(readOnly = true)
+    public List<ReservationArchive> archivedReservations(Long afterId, Integer limit) {
+        return reservationArchiveRepository.findPage(afterId, PageRequest.of(0, pageSize(limit)));
+    }
+
+    /**
+     * Returns up to limit archived schedules between startDate and endDate inclusive, in date order.
+     */
+    @Transactional(readOnly = true)
+    public List<ScheduleArchive> archivedSchedules(LocalDate startDate, LocalDate endDate, Integer limit) {
+        return scheduleArchiveRepository.findBetweenDates(startDate, endDate, PageRequest.of(0, pageSize(limit)));
+    }
+
+    /**
+     * Scrolls every reservation in id order, detaching each one once the consumer has
+     * written it, so memory use does not grow with the table.
+     */
+    @Transactional(readOnly = true)
+    public void streamReservations(Consumer<Reservation> consumer) {
+        try (Stream<Reservation> reservations = reservationsRepository.streamAll()) {
+            reservations.forEach(reservation -> {
+                consumer.accept(reservation);
+                entityManager.detach(reservation);
+            });
+        }
     }
 
-    @Transactional
-    public List<Schedule> schedules() {
-        return scheduleRepository.findAll();
+    @Transactional(readOnly = true)
+    public void streamSchedules(Consumer<Schedule> consumer) {
+        try (Stream<Schedule> schedules = scheduleRepository.streamAll()) {
+            schedules.forEach(schedule -> {
+                consumer.accept(schedule);
+                entityManager.detach(schedule);
+            });
+        }
     }
 
     /**
+     * Answered from the in-memory AvailabilityIndex, so no database round trip is made.
+     * Identical concurrent requests are coalesced into a single index scan.
      * @param schedulesRequest
      * @return
      */
-    @Transactional
     public SchedulesResponse available(final SchedulesRequest schedulesRequest) {
 
-        LocalDate startDate = schedulesRequest.getStartDate();
-        LocalDate endDate = schedulesRequest.getEndDate();
+        // concurrent callers for the same window share one computation; keying on the calendar version
+        // keeps a caller that arrives after a commit from being handed a result computed before it
+        AvailabilityQuery query = new AvailabilityQuery(schedulesRequest, calendarVersion.current());
+        CompletableFuture<SchedulesResponse> computation = new CompletableFuture<>();
+        CompletableFuture<SchedulesResponse> inFlight = availabilityInFlight.putIfAbsent(query, computation);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+        }
 
-        List<Schedule> schedules =
-                scheduleRepository.findByBetweenDatesByStatus(startDate, endDate, ScheduleStatus.AVAILABLE);
-        List<LocalDate> availableDates = schedules.stream().map(s -> s.getScheduleDate()).collect(Collectors.toList());
-        SchedulesResponse schedulesResponse = SchedulesResponse.builder()
-                .availableDates(availableDates)
-                .schedulesRequest(schedulesRequest)
+        try {
+            LocalDate startDate = schedulesRequest.getStartDate();
+            LocalDate endDate = schedulesRequest.getEndDate();
+
+            List<LocalDate> availableDates = availabilityIndex.availableDates(startDate, endDate);
+            SchedulesResponse schedulesResponse = SchedulesResponse.builder()
+                    .availableDates(availableDates)
+                    .remainingCapacity(availabilityIndex.remainingCapacity(startDate, endDate))
+                    .schedulesRequest(schedulesRequest)
+                    .build();
+            computation.complete(schedulesResponse);
+            return schedulesResponse;
+        } catch (RuntimeException ex) {
+            computation.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            availabilityInFlight.remove(query, computation);
+        }
+    }
+
+    /**
+     * Returns the earliest stays of the requested number of nights whose nights all fall between
+     * startDate and endDate inclusive, one per check-in date, from the in-memory FreeWindowIndex.
+     */
+    public WindowSearchResponse searchWindows(final WindowSearchRequest windowSearchRequest) {
+
+        List<String> errors = new ArrayList<>();
+        if (windowSearchRequest.getStartDate() == null || windowSearchRequest.getEndDate() == null) {
+            errors.add("Start Date and End Date are required.");
+        }
+        Integer nights = windowSearchRequest.getNights();
+        if (nights == null || nights < 1 || nights > maximumDays) {
+            errors.add("Nights must be between 1 and " + maximumDays + ".");
+        }
+        if (!errors.isEmpty()) {
+            return WindowSearchResponse.builder()
+                    .windows(new ArrayList<>())
+                    .windowSearchRequest(windowSearchRequest)
+                    .errors(errors)
+                    .build();
+        }
+
+        Integer limit = windowSearchRequest.getLimit();
+        List<StayWindow> windows = freeWindowIndex.earliestCheckInDates(windowSearchRequest.getStartDate(),
+                windowSearchRequest.getEndDate(), nights, limit == null || limit < 1 ? 1 : Math.min(limit, maximumPageSize))
+                .stream()
+                .map(checkInDate -> StayWindow.builder()
+                        .checkInDate(checkInDate)
+                        .checkOutDate(checkInDate.plusDays(nights))
+                        .build())
+                .collect(Collectors.toList());
+        return WindowSearchResponse.builder()
+                .windows(windows)
+                .windowSearchRequest(windowSearchRequest)
                 .build();
+    }
+
+    /**
+     * Returns up to alternativesCount bookable stays as long as the requested one, nearest check-in date
+     * first, from the in-memory FreeWindowIndex.  Used to answer a reservation whose nights are taken.
+     */
+    List<StayWindow> alternatives(LocalDate checkInDate, LocalDate checkOutDate) {
+        int nights = (int) ChronoUnit.DAYS.between(checkInDate, checkOutDate);
+        LocalDate firstCheckIn = LocalDate.now().plusDays(minimumDaysAdvance);
+        LocalDate lastCheckIn = LocalDate.now().plusDays(maximumDaysAdvance);
+        if (nights < 1 || lastCheckIn.isBefore(firstCheckIn)) {
+            return new ArrayList<>();
+        }
 
-        return schedulesResponse;
+        return freeWindowIndex.earliestCheckInDates(firstCheckIn, lastCheckIn.plusDays(nights - 1L), nights,
+                        (int) ChronoUnit.DAYS.between(firstCheckIn, lastCheckIn) + 1)
+                .stream()
+                .sorted(Comparator.comparingLong((LocalDate date) -> Math.abs(ChronoUnit.DAYS.between(checkInDate, date)))
+                        .thenComparing(date -> date))
+                .limit(alternativesCount)
+                .map(date -> StayWindow.builder()
+                        .checkInDate(date)
+                        .checkOutDate(date.plusDays(nights))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    int availabilityInFlight() {
+        return availabilityInFlight.size();
     }
 
     public Boolean validateMaxDays(LocalDate startDate, LocalDate endDate, Integer maxDays) {
@@ -128,13 +371,14 @@ public class CampsiteService {
      * @return
      */
     public List<String> validateReservationRequest(ReservationRequest reservationRequest) {
-        List<String> errors = new ArrayList<>();
+        List<String> errors = validateGuest(reservationRequest.getFirstName(),
+                reservationRequest.getLastName(), reservationRequest.getEmail());
+        errors.addAll(validateStay(reservationRequest.getCheckInDate(), reservationRequest.getCheckOutDate()));
+        return errors;
+    }
 
-        String firstName = reservationRequest.getFirstName();
-        String lastName = reservationRequest.getLastName();
-        String email = reservationRequest.getEmail();
-        LocalDate checkInDate = reservationRequest.getCheckInDate();
-        LocalDate checkOutDate = reservationRequest.getCheckOutDate();
+    public List<String> validateGuest(String firstName, String lastName, String email) {
+        List<String> errors = new ArrayList<>();
 
         if (firstName == null || firstName.isEmpty()) {
             errors.add("First Name is required.");
@@ -145,6 +389,12 @@ public class CampsiteService {
         if (email == null || email.isEmpty()) {
             errors.add("Email is required.");
         }
+        return errors;
+    }
+
+    public List<String> validateStay(LocalDate checkInDate, LocalDate checkOutDate) {
+        List<String> errors = new ArrayList<>();
+
         if (checkInDate == null || checkOutDate == null) {
             errors.add("Check In Date and Check Out Date are required.");
         } else {
@@ -164,8 +414,60 @@ public class CampsiteService {
         return errors;
     }
 
-    @Transactional
     public ReservationResponse reserve(ReservationRequest reservationRequest) {
+        return bookingTransactions.execute("reserve",
+                () -> nights(reservationRequest.getCheckInDate(), reservationRequest.getCheckOutDate()),
+                () -> doReserve(reservationRequest));
+    }
+
+    public CancellationResponse cancel(CancellationRequest cancellationRequest) {
+        return bookingTransactions.execute("cancel",
+                () -> reservationCache.scheduleDates(cancellationRequest.getBookingId()),
+                () -> bookedNights(cancellationRequest.getBookingId()),
+                () -> doCancel(cancellationRequest));
+    }
+
+    public ModificationResponse modify(ModificationRequest modificationRequest) {
+        return bookingTransactions.execute("modify",
+                () -> modifiedNights(modificationRequest, reservationCache.scheduleDates(modificationRequest.getBookingId())),
+                () -> modifiedNights(modificationRequest, bookedNights(modificationRequest.getBookingId())),
+                () -> doModify(modificationRequest));
+    }
+
+    public HoldResponse hold(HoldRequest holdRequest) {
+        return bookingTransactions.execute("hold",
+                () -> nights(holdRequest.getCheckInDate(), holdRequest.getCheckOutDate()),
+                () -> doHold(holdRequest));
+    }
+
+    public ConfirmationResponse confirm(ConfirmationRequest confirmationRequest) {
+        return bookingTransactions.execute("confirm",
+                () -> reservationCache.scheduleDates(confirmationRequest.getBookingId()),
+                () -> bookedNights(confirmationRequest.getBookingId()),
+                () -> doConfirm(confirmationRequest));
+    }
+
+    private static Set<LocalDate> modifiedNights(ModificationRequest modificationRequest, Collection<LocalDate> bookedNights) {
+        Set<LocalDate> nights = new TreeSet<>(bookedNights);
+        nights.addAll(nights(modificationRequest.getCheckInDate(), modificationRequest.getCheckOutDate()));
+        return nights;
+    }
+
+    /**
+     * Reserves a micro-batch of requests in one transaction, used by ReservationBatcher.
+     * The union of the requested nights is read once, conflicts between the requests are
+     * resolved in memory in arrival order, and all accepted reservations are written together.
+     * @return one response per request, in the same order; rejected requests carry their errors
+     */
+    public List<ReservationResponse> reserveBatch(List<ReservationRequest> reservationRequests) {
+        return bookingTransactions.execute("reserveBatch",
+                () -> reservationRequests.stream()
+                        .flatMap(r -> nights(r.getCheckInDate(), r.getCheckOutDate()).stream())
+                        .collect(Collectors.toCollection(TreeSet::new)),
+                () -> doReserveBatch(reservationRequests));
+    }
+
+    private ReservationResponse doReserve(ReservationRequest reservationRequest) {
 
         CreateReservationDTO reservationDTO = createReservation(reservationRequest);
 
@@ -178,7 +480,11 @@ public class CampsiteService {
 
         if (errors.isEmpty()) {
             reservationsRepository.save(reservationDTO.getReservation());
-            scheduleRepository.saveAll(schedulesDTO.getSchedules());
+            publishCapacityChange(schedulesDTO.getScheduleDates());
+            publishHistory(reservationDTO.getReservation());
+        } else if (!schedulesDTO.getErrors().isEmpty()) {
+            throw new ReservationException(reservationRequest, errors,
+                    alternatives(reservationRequest.getCheckInDate(), reservationRequest.getCheckOutDate()));
         } else {
             throw new ReservationException(reservationRequest, errors);
         }
@@ -190,12 +496,181 @@ public class CampsiteService {
         return reservationResponse;
     }
 
-    @Transactional
-    public CancellationResponse cancel(CancellationRequest cancellationRequest) {
+    private List<ReservationResponse> doReserveBatch(List<ReservationRequest> reservationRequests) {
+
+        List<CreateReservationDTO> reservationDTOs = reservationRequests.stream()
+                .map(this::createReservation)
+                .collect(Collectors.toList());
+
+        List<StayClaim> claims = reservationDTOs.stream()
+                .filter(reservationDTO -> reservationDTO.getErrors().isEmpty())
+                .map(reservationDTO -> new StayClaim(reservationDTO.getReservation().getBookingId(),
+                        reservationDTO.getReservation().getCheckInDate(),
+                        reservationDTO.getReservation().getCheckOutDate()))
+                .collect(Collectors.toList());
+        Iterator<List<String>> claimErrors = calendarStore.claimAll(claims).iterator();
+
+        List<ReservationResponse> reservationResponses = new ArrayList<>();
+        List<Reservation> reservations = new ArrayList<>();
+        List<LocalDate> claimedDates = new ArrayList<>();
+        for (int ii = 0; ii < reservationRequests.size(); ii++) {
+            ReservationRequest reservationRequest = reservationRequests.get(ii);
+            Reservation reservation = reservationDTOs.get(ii).getReservation();
+            List<String> errors = reservationDTOs.get(ii).getErrors();
+
+            List<StayWindow> alternatives = null;
+            if (errors.isEmpty()) {
+                errors.addAll(claimErrors.next());
+                if (errors.isEmpty()) {
+                    reservations.add(reservation);
+                    claimedDates.addAll(nights(reservation.getCheckInDate(), reservation.getCheckOutDate()));
+                } else {
+                    alternatives = alternatives(reservation.getCheckInDate(), reservation.getCheckOutDate());
+                }
+            }
+
+            reservationResponses.add(ReservationResponse.builder()
+                    .bookingId(errors.isEmpty() ? reservation.getBookingId() : null)
+                    .reservationRequest(reservationRequest)
+                    .errors(errors.isEmpty() ? null : errors)
+                    .alternatives(alternatives)
+                    .build());
+        }
+
+        reservationsRepository.saveAll(reservations);
+        eventPublisher.publishEvent(ReservationHistoryEvent.of(reservations, modifiedBy));
+        publishCapacityChange(claimedDates);
+
+        return reservationResponses;
+    }
+
+    /**
+     * Holds the requested nights for upgrade.campsite.hold.ttlSeconds without creating a
+     * Reservation.  The hold is claimed with one conditional UPDATE, so no row stays locked
+     * while the guest fills in their details; the booking ID is handed out up front and
+     * becomes the reservation's booking ID on confirm.
+     */
+    private HoldResponse doHold(HoldRequest holdRequest) {
+
+        LocalDate checkInDate = holdRequest.getCheckInDate();
+        LocalDate checkOutDate = holdRequest.getCheckOutDate();
+
+        List<String> errors = validateStay(checkInDate, checkOutDate);
+        if (!errors.isEmpty()) {
+            throw new HoldException(holdRequest, errors);
+        }
+
+        String bookingId = newBookingId();
+        LocalDateTime heldUntil = LocalDateTime.now().plusSeconds(holdTtlSeconds);
+
+        CreateSchedulesDTO schedulesDTO = claimNights(checkInDate, checkOutDate, bookingId, ScheduleStatus.HELD, heldUntil);
+        if (!schedulesDTO.getErrors().isEmpty()) {
+            throw new HoldException(holdRequest, schedulesDTO.getErrors());
+        }
+
+        holdExpiryWheel.schedule(bookingId, HoldSweeper.toEpochMilli(heldUntil));
+        publishCapacityChange(schedulesDTO.getScheduleDates());
+
+        HoldResponse holdResponse = HoldResponse.builder()
+                .bookingId(bookingId)
+                .heldUntil(heldUntil)
+                .holdRequest(holdRequest)
+                .build();
+        return holdResponse;
+    }
+
+    /**
+     * Turns an unexpired hold into a reservation.  A hold that the sweeper has not reached
+     * yet but whose heldUntil has passed cannot be confirmed.  Confirmed holds that are
+     * still on the wheel are skipped by the sweeper's conditional release.
+     */
+    private ConfirmationResponse doConfirm(ConfirmationRequest confirmationRequest) {
+
+        String bookingId = confirmationRequest.getBookingId();
+
+        List<LocalDate> heldDates = calendarStore.heldNights(bookingId);
+        if (heldDates.isEmpty()) {
+            throw new ConfirmationException(confirmationRequest,
+                    Arrays.asList("No hold found for BookingID=" + bookingId));
+        }
+
+        List<String> errors = validateGuest(confirmationRequest.getFirstName(),
+                confirmationRequest.getLastName(), confirmationRequest.getEmail());
+        if (!errors.isEmpty()) {
+            throw new ConfirmationException(confirmationRequest, errors);
+        }
+
+        int confirmed = calendarStore.confirmHold(bookingId, LocalDateTime.now());
+        if (confirmed != heldDates.size()) {
+            throw new ConfirmationException(confirmationRequest,
+                    Arrays.asList("Hold has expired for BookingID=" + bookingId));
+        }
+
+        ReservationRequest reservationRequest = ReservationRequest.builder()
+                .firstName(confirmationRequest.getFirstName())
+                .lastName(confirmationRequest.getLastName())
+                .email(confirmationRequest.getEmail())
+                .checkInDate(heldDates.get(0))
+                .checkOutDate(heldDates.get(heldDates.size() - 1).plusDays(1L))
+                .build();
+
+        Reservation reservation = Reservation.builder()
+                .bookingId(bookingId)
+                .firstName(reservationRequest.getFirstName())
+                .lastName(reservationRequest.getLastName())
+                .email(reservationRequest.getEmail())
+                .checkInDate(reservationRequest.getCheckInDate())
+                .checkOutDate(reservationRequest.getCheckOutDate())
+                .status(ReservationStatus.RESERVED)
+                .modifiedBy(modifiedBy)
+                .build();
+        reservationsRepository.save(reservation);
+        publishHistory(reservation);
+
+        ReservationResponse reservationResponse = ReservationResponse.builder()
+                .bookingId(bookingId)
+                .reservationRequest(reservationRequest)
+                .build();
+
+        ConfirmationResponse confirmationResponse = ConfirmationResponse.builder()
+                .confirmationRequest(confirmationRequest)
+                .reservationResponse(reservationResponse)
+                .build();
+        return confirmationResponse;
+    }
+
+    /**
+     * Releases every expired night held for any of bookingIds with one bulk update, in one
+     * transaction holding the date locks of all their held nights, like reserveBatch().
+     * Used by HoldSweeper with the holds handed back by one wheel tick.
+     * @return the number of nights released
+     */
+    public int releaseExpiredHolds(Collection<String> bookingIds) {
+        List<String> expired = new ArrayList<>(new LinkedHashSet<>(bookingIds));
+        // held nights never move to other dates, they are only confirmed or released,
+        // so the ones read before locking still cover whatever the release touches
+        return bookingTransactions.execute("releaseExpiredHolds",
+                () -> expired.stream()
+                        .flatMap(bookingId -> calendarStore.heldNights(bookingId).stream())
+                        .collect(Collectors.toCollection(TreeSet::new)),
+                () -> doReleaseExpiredHolds(expired));
+    }
+
+    private int doReleaseExpiredHolds(List<String> bookingIds) {
+        List<LocalDate> expiredDates = calendarStore.releaseExpiredHolds(bookingIds, LocalDateTime.now());
+        if (expiredDates.isEmpty()) {
+            return 0;
+        }
+
+        publishCapacityChange(expiredDates);
+        return expiredDates.size();
+    }
+
+    private CancellationResponse doCancel(CancellationRequest cancellationRequest) {
 
         String bookingId = cancellationRequest.getBookingId();
 
-        Optional<Reservation> reservation = reservationsRepository.findByBookingId(bookingId);
+        Optional<Reservation> reservation = findReservationForUpdate(bookingId);
 
         if (!reservation.isPresent()) {
             throw new CancellationException(cancellationRequest,
@@ -211,16 +686,12 @@ public class CampsiteService {
 
         reservationsRepository.save(reservation.get());
 
-        List<Schedule> schedules = scheduleRepository.findByBookingId(bookingId);
-
-        List<LocalDate> cancelledDates = new ArrayList<>();
+        List<LocalDate> cancelledDates = bookedNights(bookingId);
+        calendarStore.release(bookingId, cancelledDates);
 
-        for (Schedule schedule: schedules) {
-            cancelledDates.add(schedule.getScheduleDate());
-            schedule.setBookingId(null);
-            schedule.setStatus(ScheduleStatus.AVAILABLE);
-            scheduleRepository.save(schedule);
-        }
+        publishCapacityChange(cancelledDates);
+        publishHistory(reservation.get());
+        eventPublisher.publishEvent(ReservationChangeEvent.of(bookingId));
 
         CancellationResponse cancellationResponse = CancellationResponse.builder()
                 .firstName(reservation.get().getFirstName())
@@ -235,10 +706,12 @@ public class CampsiteService {
         return cancellationResponse;
     }
 
-    @Transactional
-    public ModificationResponse modify(ModificationRequest modificationRequest) {
-
-        List<String> errors = new ArrayList<>();
+    /**
+     * Modifies a reservation in place.  Only the nights that differ between the booked stay
+     * and the requested one are touched: added nights are claimed with the same conditional
+     * UPDATE as reserve, removed nights are released, and the booking ID is kept.
+     */
+    private ModificationResponse doModify(ModificationRequest modificationRequest) {
 
         String bookingId = modificationRequest.getBookingId();
         String firstName = modificationRequest.getFirstName();
@@ -248,7 +721,17 @@ public class CampsiteService {
         LocalDate checkOutDate = modificationRequest.getCheckOutDate();
 
 
-        Optional<Reservation> reservation = reservationsRepository.findByBookingId(bookingId);
+        Optional<Reservation> reservation = findReservationForUpdate(bookingId);
+
+        if (!reservation.isPresent()) {
+            throw new ModificationException(modificationRequest,
+                    Arrays.asList("Cannot modify non-existing BookingID=" + bookingId));
+        }
+
+        if (reservation.get().getStatus() == ReservationStatus.CANCELED) {
+            throw new ModificationException(modificationRequest,
+                    Arrays.asList("Cannot modify cancelled BookingID=" + bookingId));
+        }
 
         if (
                 reservation.get().getFirstName().equals(firstName)
@@ -263,27 +746,24 @@ public class CampsiteService {
             );
         }
 
-        CancellationResponse cancellationResponse = null;
-        try {
-            cancellationResponse = cancel(CancellationRequest.builder().bookingId(bookingId).build());
-        } catch (CancellationException ex) {
-            throw new ModificationException(modificationRequest, ex.getErrors());
-        }
-
         if (firstName == null || firstName.isEmpty()) {
-            firstName = cancellationResponse.getFirstName();
+            firstName = reservation.get().getFirstName();
         }
 
         if (lastName == null || lastName.isEmpty()) {
-            lastName = cancellationResponse.getLastName();
+            lastName = reservation.get().getLastName();
+        }
+
+        if (email == null || email.isEmpty()) {
+            email = reservation.get().getEmail();
         }
 
         if (checkInDate == null) {
-            checkInDate = cancellationResponse.getCheckInDate();
+            checkInDate = reservation.get().getCheckInDate();
         }
 
         if (checkOutDate == null) {
-            checkOutDate = cancellationResponse.getCheckOutDate();
+            checkOutDate = reservation.get().getCheckOutDate();
         }
 
         ReservationRequest reservationRequest = ReservationRequest.builder()
@@ -294,17 +774,70 @@ public class CampsiteService {
                 .checkOutDate(checkOutDate)
                 .build();
 
-        ReservationResponse reservationResponse = null;
-        try {
-            reservationResponse = reserve(reservationRequest);
-        } catch (ReservationException ex) {
-            throw new ModificationException(modificationRequest, ex.getErrors());
+        List<String> errors = validateReservationRequest(reservationRequest);
+        if (!errors.isEmpty()) {
+            throw new ModificationException(modificationRequest, errors);
         }
 
+        Set<LocalDate> bookedNights = new TreeSet<>(bookedNights(bookingId));
+        Set<LocalDate> requestedNights = new TreeSet<>(nights(checkInDate, checkOutDate));
+
+        List<LocalDate> releasedDates = bookedNights.stream()
+                .filter(night -> !requestedNights.contains(night))
+                .collect(Collectors.toList());
+        List<LocalDate> addedDates = requestedNights.stream()
+                .filter(night -> !bookedNights.contains(night))
+                .collect(Collectors.toList());
+
+        reservation.get().setFirstName(firstName);
+        reservation.get().setLastName(lastName);
+        reservation.get().setEmail(email);
+        reservation.get().setCheckInDate(checkInDate);
+        reservation.get().setCheckOutDate(checkOutDate);
+        reservation.get().setStatus(ReservationStatus.MODIFIED);
+        reservation.get().setModifiedBy(modifiedBy);
+        reservationsRepository.save(reservation.get());
+
+        calendarStore.release(bookingId, releasedDates);
+
+        // Added nights form at most a run before and a run after the booked stay,
+        // so each run is claimed with a single claim.
+        LocalDate runStart = null;
+        LocalDate runEnd = null;
+        for (LocalDate night : addedDates) {
+            if (runEnd != null && !night.equals(runEnd)) {
+                errors.addAll(createSchedules(runStart, runEnd, bookingId).getErrors());
+                runStart = null;
+            }
+            if (runStart == null) {
+                runStart = night;
+            }
+            runEnd = night.plusDays(1L);
+        }
+        if (runStart != null) {
+            errors.addAll(createSchedules(runStart, runEnd, bookingId).getErrors());
+        }
+
+        if (!errors.isEmpty()) {
+            throw new ModificationException(modificationRequest, errors);
+        }
+
+        List<LocalDate> changedDates = new ArrayList<>(releasedDates);
+        changedDates.addAll(addedDates);
+        publishCapacityChange(changedDates);
+        publishHistory(reservation.get());
+        eventPublisher.publishEvent(ReservationChangeEvent.of(bookingId));
+
+        ReservationResponse reservationResponse = ReservationResponse.builder()
+                .bookingId(bookingId)
+                .reservationRequest(reservationRequest)
+                .build();
+
         ModificationResponse modificationResponse = ModificationResponse.builder()
                 .modificationRequest(modificationRequest)
-                .cancellationResponse(cancellationResponse)
                 .reservationResponse(reservationResponse)
+                .addedDates(addedDates)
+                .releasedDates(releasedDates)
                 .errors(errors)
                 .build();
 
@@ -312,31 +845,31 @@ public class CampsiteService {
     }
 
     /**
-     * This method is for initializing the SCHEDULES table by inserting AVAILABLE dates
-     * into the table between the given dates.
+     * This method is for initializing the calendar by adding AVAILABLE dates
+     * between the given dates.  Dates that already exist are left as they are.
      * @param request
      * @return
      */
-    @Transactional
     public InitializeResponse initialize(InitializeRequest request) {
+        return bookingTransactions.execute("initialize",
+                () -> nights(request.getAvailableStartDate(), request.getAvailableEndDate().plusDays(1L)),
+                () -> doInitialize(request));
+    }
+
+    private InitializeResponse doInitialize(InitializeRequest request) {
         LocalDate availableStartDate = request.getAvailableStartDate();
         LocalDate availableEndDate = request.getAvailableEndDate();
 
-        for (LocalDate ii = availableStartDate;
-             ii.isBefore(availableEndDate) || ii.isEqual(availableEndDate);
-             ii = ii.plusDays(1L)
-        ) {
-            Optional<Schedule> scheduleDate = scheduleRepository.findByScheduleDate(ii);
-            if (!scheduleDate.isPresent()) {
-                scheduleDate = Optional.of(Schedule.builder().scheduleDate(ii).build());
-                scheduleDate.get().setStatus(ScheduleStatus.AVAILABLE);
-                scheduleDate.get().setBookingId(null);
-                scheduleDate.get().setModifiedBy(modifiedBy);
-                scheduleRepository.save(scheduleDate.get());
-            }
-        }
+        List<LocalDate> insertedDates = calendarStore.addDates(availableStartDate, availableEndDate, capacity);
 
-        InitializeResponse response = InitializeResponse.builder().build();
+        eventPublisher.publishEvent(ScheduleChangeEvent.of(insertedDates.stream()
+                .map(date -> new DateCapacity(date, capacity))
+                .collect(Collectors.toList())));
+
+        InitializeResponse response = InitializeResponse.builder()
+                .availableDates(insertedDates)
+                .initializeRequest(request)
+                .build();
 
         return response;
     }
@@ -348,9 +881,14 @@ public class CampsiteService {
      * @return
      * @throws InterruptedException
      */
-    @Transactional
     public ReservationResponse slowReserve(ReservationRequest reservationRequest,
                                            Long sleepInMilliseconds) throws InterruptedException {
+        return bookingTransactions.execute("slowReserve",
+                () -> nights(reservationRequest.getCheckInDate(), reservationRequest.getCheckOutDate()),
+                () -> doSlowReserve(reservationRequest, sleepInMilliseconds));
+    }
+
+    private ReservationResponse doSlowReserve(ReservationRequest reservationRequest, Long sleepInMilliseconds) {
 
         CreateReservationDTO reservationDTO = createReservation(reservationRequest);
 
@@ -361,7 +899,7 @@ public class CampsiteService {
 
         log.info("Booking ID:" + bookingId + " Before 1st Thread sleep " + sleepInMilliseconds);
 
-        Thread.sleep(sleepInMilliseconds);
+        sleep(sleepInMilliseconds);
 
         log.info("Booking ID:" + bookingId + " After 1st Thread sleep " + sleepInMilliseconds);
 
@@ -377,13 +915,14 @@ public class CampsiteService {
 
         log.info("Booking ID:" + bookingId + " Before 2nd Thread sleep " + sleepInMilliseconds);
 
-        Thread.sleep(sleepInMilliseconds);
+        sleep(sleepInMilliseconds);
 
         log.info("Booking ID:" + bookingId + " After 2nd Thread sleep " + sleepInMilliseconds);
 
         if (errors.isEmpty()) {
             reservationsRepository.save(reservationDTO.getReservation());
-            scheduleRepository.saveAll(schedulesDTO.getSchedules());
+            publishCapacityChange(schedulesDTO.getScheduleDates());
+            publishHistory(reservationDTO.getReservation());
         } else {
             throw new ReservationException(reservationRequest, errors);
         }
@@ -398,9 +937,54 @@ public class CampsiteService {
         return reservationResponse;
     }
 
+    private void sleep(Long sleepInMilliseconds) {
+        try {
+            Thread.sleep(sleepInMilliseconds);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during slowReserve", ex);
+        }
+    }
+
+    static List<LocalDate> nights(LocalDate checkInDate, LocalDate checkOutDate) {
+        List<LocalDate> nights = new ArrayList<>();
+        if (checkInDate != null && checkOutDate != null) {
+            for (LocalDate ii = checkInDate; ii.isBefore(checkOutDate); ii = ii.plusDays(1L)) {
+                nights.add(ii);
+            }
+        }
+        return nights;
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null || limit < 1 || limit > maximumPageSize ? maximumPageSize : limit;
+    }
+
+    private List<LocalDate> bookedNights(String bookingId) {
+        return calendarStore.bookedNights(bookingId);
+    }
+
+    /**
+     * In OPTIMISTIC mode the reservation is read without a lock and conflicting updates
+     * are detected through @Version when the transaction flushes.
+     */
+    private Optional<Reservation> findReservationForUpdate(String bookingId) {
+        return lockingMode == LockingMode.OPTIMISTIC
+                ? reservationsRepository.findByBookingIdNoLock(bookingId)
+                : reservationsRepository.findByBookingId(bookingId);
+    }
+
+    /**
+     * Skips IDs that an old reservation already uses, since databases from before IdService
+     * still hold randomly generated ones.
+     */
+    private String newBookingId() {
+        return idService.generateId(bookingIdLength, reservationsRepository::existsByBookingId);
+    }
+
     private CreateReservationDTO createReservation(ReservationRequest reservationRequest) {
 
-        String bookingId = idService.generateId(bookingIdLength);
+        String bookingId = newBookingId();
 
         LocalDate checkInDate = reservationRequest.getCheckInDate();
         LocalDate checkOutDate = reservationRequest.getCheckOutDate();
@@ -422,30 +1006,69 @@ public class CampsiteService {
     }
 
     private CreateSchedulesDTO createSchedules(LocalDate checkInDate, LocalDate checkOutDate, String bookingId) {
+        return claimNights(checkInDate, checkOutDate, bookingId, ScheduleStatus.NOT_AVAILABLE, null);
+    }
+
+    /**
+     * Takes a unit of every night in [checkInDate, checkOutDate) for bookingId.  If any night
+     * is unavailable the errors are returned and the caller throws, which rolls back the partial claim.
+     */
+    private CreateSchedulesDTO claimNights(LocalDate checkInDate, LocalDate checkOutDate, String bookingId,
+                                           ScheduleStatus status, LocalDateTime heldUntil) {
 
         List<String> errors = new ArrayList<>();
 
-        List<Schedule> schedules = new ArrayList<>();
-        for (LocalDate ii = checkInDate;
-             ii.isBefore(checkOutDate);
-             ii = ii.plusDays(1L))
-        {
-            Optional<Schedule> schedule = scheduleRepository.findByScheduleDate(ii);
-            if (schedule.isPresent()) {
-                    if (schedule.get().getStatus().equals(ScheduleStatus.AVAILABLE)) {
-                        schedule.get().setStatus(ScheduleStatus.NOT_AVAILABLE);
-                        schedule.get().setBookingId(bookingId);
-                        schedule.get().setModifiedBy(modifiedBy);
-                        schedules.add(schedule.get());
-                    } else {
-                        errors.add( ii + " Date not available.  " + "Existing Booking ID: " + schedule.get().getBookingId());
-                    }
-            } else {
-                errors.add( ii + " Date not available.  ");
-            }
+        List<LocalDate> scheduleDates = new ArrayList<>();
+
+        if (checkInDate == null || checkOutDate == null || !checkInDate.isBefore(checkOutDate)) {
+            return CreateSchedulesDTO.builder().scheduleDates(scheduleDates).errors(errors).build();
+        }
+
+        errors.addAll(calendarStore.claim(checkInDate, checkOutDate, bookingId, status, heldUntil));
+        if (errors.isEmpty()) {
+            scheduleDates.addAll(nights(checkInDate, checkOutDate));
         }
 
-        return CreateSchedulesDTO.builder().schedules(schedules).errors(errors).build();
+        return CreateSchedulesDTO.builder().scheduleDates(scheduleDates).errors(errors).build();
+    }
+
+    private void publishHistory(Reservation reservation) {
+        eventPublisher.publishEvent(ReservationHistoryEvent.of(Collections.singletonList(reservation), modifiedBy));
+    }
+
+    /**
+     * Publishes the remaining capacity of the given dates, read back after this transaction's updates.
+     */
+    private void publishCapacityChange(Collection<LocalDate> dates) {
+        eventPublisher.publishEvent(ScheduleChangeEvent.of(calendarStore.remaining(dates)));
     }
 
+    /**
+     * Key of an in-flight availability computation.
+     */
+    private static final class AvailabilityQuery {
+
+        private final SchedulesRequest schedulesRequest;
+
+        private final long version;
+
+        private AvailabilityQuery(SchedulesRequest schedulesRequest, long version) {
+            this.schedulesRequest = schedulesRequest;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof AvailabilityQuery)) {
+                return false;
+            }
+            AvailabilityQuery query = (AvailabilityQuery) other;
+            return version == query.version && schedulesRequest.equals(query.schedulesRequest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * schedulesRequest.hashCode() + Long.hashCode(version);
+        }
+    }
 }
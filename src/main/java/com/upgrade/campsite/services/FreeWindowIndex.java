@@ -0,0 +1,194 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Segment tree over the AVAILABLE schedule dates, keyed by epoch day.  Every node keeps the longest
+ * run of free days it starts with, ends with and contains, so the earliest run of n free nights after
+ * a date is found in O(log horizon) and a single date changes in O(log horizon).
+ *
+ * Like AvailabilityIndex it is loaded at startup and updated after every committed schedule change.
+ */
+@Slf4j
+@Component
+public class FreeWindowIndex {
+
+    private CalendarStore calendarStore;
+
+    private CalendarJournal calendarJournal;
+
+    private long baseEpochDay;
+
+    private int capacity;
+
+    private int[] prefix;
+
+    private int[] suffix;
+
+    private int[] longest;
+
+    @Autowired
+    public FreeWindowIndex(CalendarStore calendarStore, CalendarJournal calendarJournal) {
+        this.calendarStore = calendarStore;
+        this.calendarJournal = calendarJournal;
+        allocate(0L, 1);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void reload() {
+        List<LocalDate> dates = calendarJournal.capacities()
+                .orElseGet(calendarStore::availableCapacity)
+                .stream()
+                .filter(c -> c.getRemaining() > 0)
+                .map(DateCapacity::getScheduleDate)
+                .collect(Collectors.toList());
+        long first = dates.stream().mapToLong(LocalDate::toEpochDay).min().orElse(0L);
+        long last = dates.stream().mapToLong(LocalDate::toEpochDay).max().orElse(0L);
+        allocate(first, (int) (last - first + 1));
+        for (LocalDate date : dates) {
+            set(date.toEpochDay(), true);
+        }
+        log.info("Free window index loaded with " + dates.size() + " available dates");
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onScheduleChange(ScheduleChangeEvent event) {
+        for (Map.Entry<LocalDate, ScheduleStatus> change : event.getChanges().entrySet()) {
+            boolean free = change.getValue() == ScheduleStatus.AVAILABLE;
+            long epochDay = change.getKey().toEpochDay();
+            if (free) {
+                cover(epochDay);
+            }
+            if (epochDay >= baseEpochDay && epochDay < baseEpochDay + capacity) {
+                set(epochDay, free);
+            }
+        }
+    }
+
+    /**
+     * Returns the check-in dates of up to limit stays of the given number of nights whose nights all
+     * fall between startDate and endDate inclusive, earliest first.
+     */
+    public synchronized List<LocalDate> earliestCheckInDates(LocalDate startDate, LocalDate endDate, int nights, int limit) {
+        List<LocalDate> checkInDates = new ArrayList<>();
+        long from = Math.max(startDate.toEpochDay(), baseEpochDay);
+        long lastCheckIn = endDate.toEpochDay() - nights + 1;
+        while (checkInDates.size() < limit && from <= lastCheckIn && from < baseEpochDay + capacity) {
+            int found = search(1, 0, capacity - 1, (int) (from - baseEpochDay), nights, new int[1]);
+            if (found < 0 || baseEpochDay + found > lastCheckIn) {
+                break;
+            }
+            checkInDates.add(LocalDate.ofEpochDay(baseEpochDay + found));
+            from = baseEpochDay + found + 1;
+        }
+        return checkInDates;
+    }
+
+    /**
+     * Finds the first position at or after from that starts a run of n free days, visiting the nodes
+     * covering [from, capacity) left to right.  run carries the free days that end just before the node.
+     */
+    private int search(int node, int lo, int hi, int from, int n, int[] run) {
+        if (hi < from) {
+            return -1;
+        }
+        if (lo >= from) {
+            if (run[0] + prefix[node] >= n) {
+                return lo - run[0];
+            }
+            if (longest[node] >= n) {
+                return descend(node, lo, hi, n);
+            }
+            run[0] = prefix[node] == hi - lo + 1 ? run[0] + prefix[node] : suffix[node];
+            return -1;
+        }
+        int mid = (lo + hi) >>> 1;
+        int found = search(2 * node, lo, mid, from, n, run);
+        return found >= 0 ? found : search(2 * node + 1, mid + 1, hi, from, n, run);
+    }
+
+    /**
+     * Returns the first run of n free days inside a node known to contain one.
+     */
+    private int descend(int node, int lo, int hi, int n) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int left = 2 * node;
+            if (longest[left] >= n) {
+                node = left;
+                hi = mid;
+            } else if (suffix[left] + prefix[left + 1] >= n) {
+                return mid - suffix[left] + 1;
+            } else {
+                node = left + 1;
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Rebuilds the tree so that epochDay is covered, doubling the capacity or moving the base back.
+     */
+    private void cover(long epochDay) {
+        if (epochDay >= baseEpochDay && epochDay < baseEpochDay + capacity) {
+            return;
+        }
+        if (longest[1] == 0) {
+            allocate(epochDay, capacity);
+            return;
+        }
+        List<Long> free = new ArrayList<>();
+        for (int ii = 0; ii < capacity; ii++) {
+            if (prefix[capacity + ii] == 1) {
+                free.add(baseEpochDay + ii);
+            }
+        }
+        long first = Math.min(baseEpochDay, epochDay);
+        long last = Math.max(baseEpochDay + capacity - 1, epochDay);
+        allocate(first, (int) Math.max(2L * capacity, last - first + 1));
+        for (long day : free) {
+            set(day, true);
+        }
+    }
+
+    private void allocate(long baseEpochDay, int days) {
+        this.baseEpochDay = baseEpochDay;
+        this.capacity = Integer.highestOneBit(Math.max(1, days - 1)) << 1;
+        this.prefix = new int[2 * capacity];
+        this.suffix = new int[2 * capacity];
+        this.longest = new int[2 * capacity];
+    }
+
+    private void set(long epochDay, boolean free) {
+        int node = capacity + (int) (epochDay - baseEpochDay);
+        int value = free ? 1 : 0;
+        prefix[node] = value;
+        suffix[node] = value;
+        longest[node] = value;
+        for (int half = 1; node > 1; half <<= 1) {
+            node >>>= 1;
+            int left = 2 * node;
+            int right = left + 1;
+            prefix[node] = prefix[left] == half ? half + prefix[right] : prefix[left];
+            suffix[node] = suffix[right] == half ? half + suffix[left] : suffix[right];
+            longest[node] = Math.max(Math.max(longest[left], longest[right]), suffix[left] + prefix[right]);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.upgrade.campsite.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed timing wheel of hold expiry deadlines.  Each hold costs one slot entry instead of
+ * one timer, and advance() hands back every hold that expired since the previous call so
+ * HoldSweeper can release them with a single bulk update.
+ */
+@Component
+public class HoldExpiryWheel {
+
+    private final long tickMillis;
+
+    private final List<Set<String>> slots;
+
+    private final Map<String, Long> deadlines = new HashMap<>();
+
+    private long currentTick;
+
+    @Autowired
+    public HoldExpiryWheel(@Value("${upgrade.campsite.hold.tickMillis}") Long tickMillis,
+                           @Value("${upgrade.campsite.hold.wheelSlots}") Integer wheelSlots) {
+        this(tickMillis, wheelSlots, System.currentTimeMillis());
+    }
+
+    HoldExpiryWheel(long tickMillis, int wheelSlots, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(wheelSlots);
+        for (int ii = 0; ii < wheelSlots; ii++) {
+            slots.add(new HashSet<>());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules bookingId to be handed back by the first advance() at or after expiresAtMillis.
+     */
+    public synchronized void schedule(String bookingId, long expiresAtMillis) {
+        long deadlineTick = Math.max((expiresAtMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        deadlines.put(bookingId, deadlineTick);
+        slots.get((int) (deadlineTick % slots.size())).add(bookingId);
+    }
+
+    /**
+     * Moves the wheel to nowMillis and returns the holds whose deadline has passed.
+     * Entries of later rounds stay in their slot until their own deadline.
+     */
+    public synchronized List<String> advance(long nowMillis) {
+        List<String> expired = new ArrayList<>();
+        long nowTick = nowMillis / tickMillis;
+        long ticks = Math.min(nowTick - currentTick, slots.size());
+        for (long ii = 1; ii <= ticks; ii++) {
+            Iterator<String> slot = slots.get((int) ((currentTick + ii) % slots.size())).iterator();
+            while (slot.hasNext()) {
+                String bookingId = slot.next();
+                if (deadlines.get(bookingId) <= nowTick) {
+                    deadlines.remove(bookingId);
+                    slot.remove();
+                    expired.add(bookingId);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        return expired;
+    }
+
+    public synchronized int size() {
+        return deadlines.size();
+    }
+}
@@ -0,0 +1,78 @@
+package com.upgrade.campsite.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Releases expired holds once per wheel tick.  Holds left in the calendar store by a previous run
+ * are put back on the wheel at startup.
+ *
+ * If the bulk release of a tick fails (e.g. on a date lock timeout), each hold is released on its
+ * own, and the ones still failing go back on the wheel for the next tick.
+ */
+@Slf4j
+@Component
+public class HoldSweeper {
+
+    private HoldExpiryWheel holdExpiryWheel;
+
+    private CampsiteService campsiteService;
+
+    private CalendarStore calendarStore;
+
+    @Autowired
+    public HoldSweeper(HoldExpiryWheel holdExpiryWheel,
+                       CampsiteService campsiteService,
+                       CalendarStore calendarStore) {
+        this.holdExpiryWheel = holdExpiryWheel;
+        this.campsiteService = campsiteService;
+        this.calendarStore = calendarStore;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void reload() {
+        calendarStore.holds().forEach((bookingId, heldUntil) ->
+                holdExpiryWheel.schedule(bookingId, toEpochMilli(heldUntil)));
+    }
+
+    @Scheduled(fixedDelayString = "${upgrade.campsite.hold.tickMillis}")
+    public void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+
+    void sweep(long nowMillis) {
+        List<String> expired = holdExpiryWheel.advance(nowMillis);
+        if (expired.isEmpty()) {
+            return;
+        }
+        int released;
+        try {
+            released = campsiteService.releaseExpiredHolds(expired);
+        } catch (RuntimeException ex) {
+            log.warn("Releasing " + expired.size() + " expired holds failed, retrying them one by one", ex);
+            released = 0;
+            for (String bookingId : expired) {
+                try {
+                    released += campsiteService.releaseExpiredHolds(Collections.singletonList(bookingId));
+                } catch (RuntimeException bookingEx) {
+                    log.warn("Releasing expired hold " + bookingId + " failed, retrying next tick", bookingEx);
+                    holdExpiryWheel.schedule(bookingId, nowMillis);
+                }
+            }
+        }
+        log.info("Released " + released + " nights from " + expired.size() + " expired holds");
+    }
+
+    static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -1,20 +1,158 @@
 package com.upgrade.campsite.services;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Generates unique booking IDs.  Each ID is a counter value passed through a keyed Feistel
+ * permutation of [0, 26^length) and written in base 26, so IDs never repeat until the counter
+ * runs past 26^length, yet consecutive IDs look unrelated.  Counters are handed out in blocks
+ * taken from BOOKING_ID_SEQ, so they stay unique across restarts and instances, and inside a
+ * block they come from a single atomic increment.
+ *
+ * Permuted IDs only never repeat each other.  Databases upgraded in place still hold IDs from the
+ * old Math.random() generator, so callers pass a check for IDs already taken and those are skipped.
+ */
 @Component
 public class IdService {
-    private final String allowedCharacters="ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String ALLOWED_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private static final String SEQUENCE = "BOOKING_ID_SEQ";
+
+    private static final int MAX_LENGTH = 13;
+
+    private static final int ROUNDS = 4;
+
+    private static final long[] SPACE = new long[MAX_LENGTH + 1];
+
+    private static final int[] HALF_BITS = new int[MAX_LENGTH + 1];
+
+    static {
+        SPACE[0] = 1L;
+        for (int ii = 1; ii <= MAX_LENGTH; ii++) {
+            SPACE[ii] = SPACE[ii - 1] * ALLOWED_CHARACTERS.length();
+            HALF_BITS[ii] = (64 - Long.numberOfLeadingZeros(SPACE[ii] - 1) + 1) / 2;
+        }
+    }
+
+    private final LongSupplier blockSource;
+
+    private final long blockSize;
+
+    private final long[] roundKeys = new long[ROUNDS];
+
+    private volatile Block block = new Block(0L, 0L);
+
+    /**
+     * The key selects the permutation.  It must not change once IDs have been issued,
+     * otherwise new IDs may repeat old ones.
+     */
+    @Autowired
+    public IdService(JdbcTemplate jdbcTemplate,
+                     @Value("${upgrade.campsite.bookingId.blockSize}") Long blockSize,
+                     @Value("${upgrade.campsite.bookingId.key}") Long key) {
+        this(sequenceBlockSource(jdbcTemplate), blockSize, key);
+    }
+
+    IdService(LongSupplier blockSource, long blockSize, long key) {
+        this.blockSource = blockSource;
+        this.blockSize = blockSize;
+        long seed = key;
+        for (int ii = 0; ii < ROUNDS; ii++) {
+            seed += 0x9E3779B97F4A7C15L;
+            roundKeys[ii] = mix(seed);
+        }
+    }
+
+    /**
+     * @param taken whether an ID is already in use; such IDs are skipped
+     */
+    public String generateId(Integer length, Predicate<String> taken) {
+        String bookingId = generateId(length);
+        while (taken.test(bookingId)) {
+            bookingId = generateId(length);
+        }
+        return bookingId;
+    }
 
     public String generateId(Integer length) {
-        String result = "";
-        Integer aLength = allowedCharacters.length();
-        Integer counter=length;
-        while (counter > 0) {
-            Integer r = Double.valueOf(aLength * Math.random()).intValue();
-            result = result + allowedCharacters.charAt(r);
-            counter--;
-        }
-        return result;
+        if (length < 1 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Booking ID length must be between 1 and " + MAX_LENGTH);
+        }
+        long counter = nextCounter();
+        if (counter >= SPACE[length]) {
+            throw new IllegalStateException("All booking IDs of length " + length + " have been issued");
+        }
+
+        long value = permute(counter, SPACE[length], HALF_BITS[length]);
+
+        char[] result = new char[length];
+        for (int ii = length - 1; ii >= 0; ii--) {
+            result[ii] = ALLOWED_CHARACTERS.charAt((int) (value % ALLOWED_CHARACTERS.length()));
+            value /= ALLOWED_CHARACTERS.length();
+        }
+        return new String(result);
+    }
+
+    private long nextCounter() {
+        while (true) {
+            Block current = block;
+            long counter = current.next.getAndIncrement();
+            if (counter < current.end) {
+                return counter;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    long hi = blockSource.getAsLong();
+                    block = new Block(hi * blockSize, (hi + 1) * blockSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cycle-walks a Feistel network over the smallest even bit width covering space,
+     * which is a permutation of [0, space).
+     */
+    private long permute(long value, long space, int halfBits) {
+        long mask = (1L << halfBits) - 1;
+        do {
+            long left = value >>> halfBits;
+            long right = value & mask;
+            for (long roundKey : roundKeys) {
+                long next = left ^ (mix(right ^ roundKey) & mask);
+                left = right;
+                right = next;
+            }
+            value = (left << halfBits) | right;
+        } while (value >= space);
+        return value;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static LongSupplier sequenceBlockSource(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("create sequence if not exists " + SEQUENCE);
+        return () -> jdbcTemplate.queryForObject("select next value for " + SEQUENCE, Long.class);
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
     }
 }
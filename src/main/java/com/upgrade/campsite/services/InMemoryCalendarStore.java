@@ -0,0 +1,354 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.dto.StayClaim;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the calendar in the heap only, for tests, demos and deployments that rebuild their
+ * calendar at startup.  Nothing survives a restart.
+ *
+ * Every date has an atomic booked counter taken and given back with compare-and-set, so a claim
+ * never blocks; a claim that finds a night full gives back the units it already took.  The nights
+ * of a booking are an immutable map replaced atomically.  Changes are visible at once and are
+ * undone when the surrounding transaction rolls back.
+ */
+@Component
+@ConditionalOnProperty(name = "upgrade.campsite.calendarStore", havingValue = "IN_MEMORY")
+public class InMemoryCalendarStore implements CalendarStore {
+
+    private final ConcurrentNavigableMap<LocalDate, Night> nights = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Map<LocalDate, Hold>> bookings = new ConcurrentHashMap<>();
+
+    @Override
+    public List<LocalDate> addDates(LocalDate startDate, LocalDate endDate, int capacity) {
+        List<LocalDate> added = new ArrayList<>();
+        for (LocalDate ii = startDate; !ii.isAfter(endDate); ii = ii.plusDays(1L)) {
+            if (nights.putIfAbsent(ii, new Night(capacity)) == null) {
+                added.add(ii);
+            }
+        }
+        onRollback(() -> added.forEach(nights::remove));
+        return added;
+    }
+
+    @Override
+    public Optional<LocalDate> firstDate() {
+        return nights.isEmpty() ? Optional.empty() : Optional.of(nights.firstKey());
+    }
+
+    @Override
+    public Optional<LocalDate> lastDate() {
+        return nights.isEmpty() ? Optional.empty() : Optional.of(nights.lastKey());
+    }
+
+    @Override
+    public List<String> claim(LocalDate checkInDate, LocalDate checkOutDate, String bookingId,
+                              ScheduleStatus status, LocalDateTime heldUntil) {
+        List<LocalDate> taken = new ArrayList<>();
+        for (LocalDate ii = checkInDate; ii.isBefore(checkOutDate); ii = ii.plusDays(1L)) {
+            Night night = nights.get(ii);
+            if (night == null || !night.take()) {
+                taken.forEach(date -> nights.get(date).give(1));
+                List<String> errors = unavailableDates(checkInDate, checkOutDate);
+                if (errors.isEmpty()) {
+                    // the conflicting booking went away while this claim ran
+                    errors.add( ii + " Date not available.  ");
+                }
+                return errors;
+            }
+            taken.add(ii);
+        }
+        allocate(bookingId, taken, new Hold(status, heldUntil));
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<List<String>> claimAll(List<StayClaim> claims) {
+        List<List<String>> errors = new ArrayList<>();
+        for (StayClaim claim : claims) {
+            errors.add(claim(claim.getCheckInDate(), claim.getCheckOutDate(), claim.getBookingId(),
+                    ScheduleStatus.NOT_AVAILABLE, null));
+        }
+        return errors;
+    }
+
+    @Override
+    public void release(String bookingId, Collection<LocalDate> dates) {
+        Map<LocalDate, Hold> released = new HashMap<>();
+        bookings.computeIfPresent(bookingId, (id, held) -> {
+            Map<LocalDate, Hold> kept = new TreeMap<>(held);
+            for (LocalDate date : dates) {
+                Hold hold = kept.remove(date);
+                if (hold != null) {
+                    released.put(date, hold);
+                }
+            }
+            return kept.isEmpty() ? null : Collections.unmodifiableMap(kept);
+        });
+        released.keySet().forEach(date -> nights.get(date).give(1));
+        onRollback(() -> {
+            merge(bookingId, released);
+            List<LocalDate> full = released.keySet().stream()
+                    .filter(date -> !nights.get(date).restore())
+                    .collect(Collectors.toList());
+            if (!full.isEmpty()) {
+                throw new IllegalStateException("Rolled back release of " + bookingId
+                        + " found " + full + " already taken by another booking");
+            }
+        });
+    }
+
+    @Override
+    public List<LocalDate> bookedNights(String bookingId) {
+        return new ArrayList<>(bookings.getOrDefault(bookingId, Collections.emptyMap()).keySet());
+    }
+
+    @Override
+    public List<LocalDate> heldNights(String bookingId) {
+        return bookings.getOrDefault(bookingId, Collections.emptyMap()).entrySet().stream()
+                .filter(entry -> entry.getValue().status == ScheduleStatus.HELD)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int confirmHold(String bookingId, LocalDateTime now) {
+        Map<LocalDate, Hold> confirmed = new HashMap<>();
+        Map<LocalDate, Hold> previous = new HashMap<>();
+        bookings.computeIfPresent(bookingId, (id, held) -> {
+            Map<LocalDate, Hold> updated = new TreeMap<>(held);
+            held.forEach((date, hold) -> {
+                if (hold.status == ScheduleStatus.HELD && hold.heldUntil.isAfter(now)) {
+                    previous.put(date, hold);
+                    confirmed.put(date, new Hold(ScheduleStatus.NOT_AVAILABLE, null));
+                }
+            });
+            updated.putAll(confirmed);
+            return Collections.unmodifiableMap(updated);
+        });
+        onRollback(() -> merge(bookingId, previous));
+        return confirmed.size();
+    }
+
+    @Override
+    public List<LocalDate> releaseExpiredHolds(Collection<String> bookingIds, LocalDateTime now) {
+        List<LocalDate> released = new ArrayList<>();
+        for (String bookingId : bookingIds) {
+            List<LocalDate> expired = bookings.getOrDefault(bookingId, Collections.emptyMap()).entrySet().stream()
+                    .filter(entry -> entry.getValue().status == ScheduleStatus.HELD
+                            && !entry.getValue().heldUntil.isAfter(now))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            if (!expired.isEmpty()) {
+                release(bookingId, expired);
+                released.addAll(expired);
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public Map<String, LocalDateTime> holds() {
+        Map<String, LocalDateTime> holds = new HashMap<>();
+        bookings.forEach((bookingId, held) -> held.values().stream()
+                .filter(hold -> hold.status == ScheduleStatus.HELD)
+                .findFirst()
+                .ifPresent(hold -> holds.put(bookingId, hold.heldUntil)));
+        return holds;
+    }
+
+    @Override
+    public List<DateCapacity> remaining(Collection<LocalDate> dates) {
+        return dates.stream()
+                .distinct()
+                .filter(nights::containsKey)
+                .map(date -> new DateCapacity(date, nights.get(date).remaining()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DateCapacity> availableCapacity() {
+        List<DateCapacity> capacities = new ArrayList<>();
+        nights.forEach((date, night) -> {
+            int remaining = night.remaining();
+            if (remaining > 0) {
+                capacities.add(new DateCapacity(date, remaining));
+            }
+        });
+        return capacities;
+    }
+
+    /**
+     * Archived dates are simply dropped.
+     */
+    @Override
+    public List<LocalDate> archiveBefore(LocalDate cutoff, int limit) {
+        List<LocalDate> dates = nights.headMap(cutoff).keySet().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+        if (dates.isEmpty()) {
+            return dates;
+        }
+        Map<LocalDate, Night> removedNights = new HashMap<>();
+        Map<String, Map<LocalDate, Hold>> removedHolds = new HashMap<>();
+        dates.forEach(date -> removedNights.put(date, nights.remove(date)));
+        for (String bookingId : bookings.keySet()) {
+            bookings.computeIfPresent(bookingId, (id, held) -> {
+                Map<LocalDate, Hold> kept = new TreeMap<>(held);
+                Map<LocalDate, Hold> removed = new HashMap<>();
+                for (LocalDate date : dates) {
+                    Hold hold = kept.remove(date);
+                    if (hold != null) {
+                        removed.put(date, hold);
+                    }
+                }
+                if (removed.isEmpty()) {
+                    return held;
+                }
+                removedHolds.put(bookingId, removed);
+                return kept.isEmpty() ? null : Collections.unmodifiableMap(kept);
+            });
+        }
+        onRollback(() -> {
+            nights.putAll(removedNights);
+            removedHolds.forEach(this::merge);
+        });
+        return dates;
+    }
+
+    private void allocate(String bookingId, List<LocalDate> dates, Hold hold) {
+        Map<LocalDate, Hold> allocated = new HashMap<>();
+        dates.forEach(date -> allocated.put(date, hold));
+        merge(bookingId, allocated);
+        onRollback(() -> {
+            bookings.computeIfPresent(bookingId, (id, held) -> {
+                Map<LocalDate, Hold> kept = new TreeMap<>(held);
+                kept.keySet().removeAll(dates);
+                return kept.isEmpty() ? null : Collections.unmodifiableMap(kept);
+            });
+            dates.forEach(date -> nights.get(date).give(1));
+        });
+    }
+
+    private void merge(String bookingId, Map<LocalDate, Hold> nights) {
+        if (nights.isEmpty()) {
+            return;
+        }
+        bookings.merge(bookingId, Collections.unmodifiableMap(new TreeMap<>(nights)), (held, added) -> {
+            Map<LocalDate, Hold> merged = new TreeMap<>(held);
+            merged.putAll(added);
+            return Collections.unmodifiableMap(merged);
+        });
+    }
+
+    /**
+     * Describes the nights in [checkInDate, checkOutDate) that have no unit left.
+     */
+    private List<String> unavailableDates(LocalDate checkInDate, LocalDate checkOutDate) {
+        List<String> errors = new ArrayList<>();
+        for (LocalDate ii = checkInDate; ii.isBefore(checkOutDate); ii = ii.plusDays(1L)) {
+            Night night = nights.get(ii);
+            if (night == null) {
+                errors.add( ii + " Date not available.  ");
+            } else if (night.remaining() <= 0) {
+                LocalDate date = ii;
+                errors.add( ii + " Date not available.  " + "Existing Booking ID: " + bookings.entrySet().stream()
+                        .filter(entry -> entry.getValue().containsKey(date))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.joining(", ")));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Runs undo if the transaction the caller is in rolls back.  Outside a transaction changes are final.
+     */
+    private void onRollback(Runnable undo) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        undo.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class Night {
+
+        private final int capacity;
+
+        private final AtomicInteger booked = new AtomicInteger();
+
+        private Night(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private boolean take() {
+            for (;;) {
+                int current = booked.get();
+                if (current >= capacity) {
+                    return false;
+                }
+                if (booked.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Takes back a unit given back by a rolled back release.  The date lock held through the
+         * rollback keeps anybody else from taking it, but a full night is never pushed past capacity.
+         * @return false if the night is full
+         */
+        private boolean restore() {
+            return take();
+        }
+
+        private void give(int units) {
+            booked.accumulateAndGet(units, (current, given) -> Math.max(0, current - given));
+        }
+
+        private int remaining() {
+            return capacity - booked.get();
+        }
+    }
+
+    private static final class Hold {
+
+        private final ScheduleStatus status;
+
+        private final LocalDateTime heldUntil;
+
+        private Hold(ScheduleStatus status, LocalDateTime heldUntil) {
+            this.status = status;
+            this.heldUntil = heldUntil;
+        }
+    }
+}
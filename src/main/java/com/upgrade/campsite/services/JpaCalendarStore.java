@@ -0,0 +1,311 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.dto.StayClaim;
+import com.upgrade.campsite.entities.Allocation;
+import com.upgrade.campsite.entities.AllocationArchiveRepository;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.Schedule;
+import com.upgrade.campsite.entities.ScheduleArchiveRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.LockingMode;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the calendar in the SCHEDULE table, one row per date with its capacity and booked
+ * counter, and in ALLOCATION, one row per booked night.  Rolled back with the JPA transaction.
+ */
+@Component
+@ConditionalOnProperty(name = "upgrade.campsite.calendarStore", havingValue = "JPA", matchIfMissing = true)
+public class JpaCalendarStore implements CalendarStore {
+
+    private ScheduleRepository scheduleRepository;
+
+    private AllocationRepository allocationRepository;
+
+    private ScheduleArchiveRepository scheduleArchiveRepository;
+
+    private AllocationArchiveRepository allocationArchiveRepository;
+
+    private LockingMode lockingMode;
+
+    private String modifiedBy;
+
+    @Autowired
+    public JpaCalendarStore(ScheduleRepository scheduleRepository,
+                            AllocationRepository allocationRepository,
+                            ScheduleArchiveRepository scheduleArchiveRepository,
+                            AllocationArchiveRepository allocationArchiveRepository,
+                            @Value("${upgrade.campsite.lockingMode}") LockingMode lockingMode,
+                            @Value("${upgrade.campsite.modifiedBy}") String modifiedBy) {
+        this.scheduleRepository = scheduleRepository;
+        this.allocationRepository = allocationRepository;
+        this.scheduleArchiveRepository = scheduleArchiveRepository;
+        this.allocationArchiveRepository = allocationArchiveRepository;
+        this.lockingMode = lockingMode;
+        this.modifiedBy = modifiedBy;
+    }
+
+    /**
+     * The existing dates are read with one query and the missing ones are inserted in JDBC batches.
+     */
+    @Override
+    public List<LocalDate> addDates(LocalDate startDate, LocalDate endDate, int capacity) {
+        Set<LocalDate> existingDates = new HashSet<>(scheduleRepository.findScheduleDatesBetween(startDate, endDate));
+
+        List<Schedule> insertedSchedules = new ArrayList<>();
+        List<LocalDate> insertedDates = new ArrayList<>();
+        for (LocalDate ii = startDate; !ii.isAfter(endDate); ii = ii.plusDays(1L)) {
+            if (!existingDates.contains(ii)) {
+                Schedule schedule = Schedule.builder().scheduleDate(ii).build();
+                schedule.setStatus(ScheduleStatus.AVAILABLE);
+                schedule.setCapacity(capacity);
+                schedule.setBooked(0);
+                schedule.setModifiedBy(modifiedBy);
+                insertedSchedules.add(schedule);
+                insertedDates.add(ii);
+            }
+        }
+        scheduleRepository.saveAll(insertedSchedules);
+        return insertedDates;
+    }
+
+    @Override
+    public Optional<LocalDate> firstDate() {
+        return Optional.ofNullable(scheduleRepository.findMinScheduleDate());
+    }
+
+    @Override
+    public Optional<LocalDate> lastDate() {
+        return Optional.ofNullable(scheduleRepository.findMaxScheduleDate());
+    }
+
+    /**
+     * Takes the units with one conditional UPDATE and records an Allocation per night.  The claim
+     * succeeds only when the updated row count equals the number of nights; otherwise the caller
+     * throws, which rolls back the partial claim.
+     */
+    @Override
+    public List<String> claim(LocalDate checkInDate, LocalDate checkOutDate, String bookingId,
+                              ScheduleStatus status, LocalDateTime heldUntil) {
+        long nights = ChronoUnit.DAYS.between(checkInDate, checkOutDate);
+        int claimed = scheduleRepository.claimBetweenDates(checkInDate, checkOutDate,
+                modifiedBy, LocalDateTime.now(), ScheduleStatus.NOT_AVAILABLE, ScheduleStatus.AVAILABLE);
+
+        if (claimed != nights) {
+            List<String> errors = unavailableDates(checkInDate, checkOutDate);
+            if (errors.isEmpty()) {
+                // the conflicting booking went away after the UPDATE
+                errors.add( checkInDate + " Date not available.  ");
+            }
+            return errors;
+        }
+
+        List<Allocation> allocations = new ArrayList<>();
+        for (LocalDate ii = checkInDate; ii.isBefore(checkOutDate); ii = ii.plusDays(1L)) {
+            allocations.add(allocation(bookingId, ii, status, heldUntil));
+        }
+        allocationRepository.saveAll(allocations);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Reads (and, unless OPTIMISTIC, locks) every schedule the stays touch with one query,
+     * books them in memory and writes the allocations in JDBC batches.
+     */
+    @Override
+    public List<List<String>> claimAll(List<StayClaim> claims) {
+        List<List<String>> errors = new ArrayList<>();
+        if (claims.isEmpty()) {
+            return errors;
+        }
+
+        LocalDate firstNight = claims.stream().map(StayClaim::getCheckInDate).min(LocalDate::compareTo).get();
+        LocalDate lastCheckOut = claims.stream().map(StayClaim::getCheckOutDate).max(LocalDate::compareTo).get();
+
+        Map<LocalDate, Schedule> schedules = new HashMap<>();
+        List<Schedule> stay = lockingMode == LockingMode.OPTIMISTIC
+                ? scheduleRepository.findByStayNoLock(firstNight, lastCheckOut)
+                : scheduleRepository.findByStay(firstNight, lastCheckOut);
+        stay.forEach(schedule -> schedules.put(schedule.getScheduleDate(), schedule));
+
+        List<Allocation> allocations = new ArrayList<>();
+        List<Allocation> existingAllocations = null;
+        for (StayClaim claim : claims) {
+            List<String> claimErrors = new ArrayList<>();
+            for (LocalDate night = claim.getCheckInDate(); night.isBefore(claim.getCheckOutDate()); night = night.plusDays(1L)) {
+                Schedule schedule = schedules.get(night);
+                if (schedule == null) {
+                    claimErrors.add( night + " Date not available.  ");
+                } else if (schedule.getBooked() >= schedule.getCapacity()) {
+                    if (existingAllocations == null) {
+                        existingAllocations = allocationRepository.findByStay(firstNight, lastCheckOut);
+                    }
+                    LocalDate date = night;
+                    claimErrors.add( night + " Date not available.  " + "Existing Booking ID: "
+                            + Stream.concat(existingAllocations.stream(), allocations.stream())
+                                    .filter(allocation -> allocation.getScheduleDate().equals(date))
+                                    .map(Allocation::getBookingId)
+                                    .collect(Collectors.joining(", ")));
+                }
+            }
+
+            if (claimErrors.isEmpty()) {
+                for (LocalDate night = claim.getCheckInDate(); night.isBefore(claim.getCheckOutDate()); night = night.plusDays(1L)) {
+                    Schedule schedule = schedules.get(night);
+                    schedule.setBooked(schedule.getBooked() + 1);
+                    if (schedule.getBooked() >= schedule.getCapacity()) {
+                        schedule.setStatus(ScheduleStatus.NOT_AVAILABLE);
+                    }
+                    schedule.setModifiedBy(modifiedBy);
+                    allocations.add(allocation(claim.getBookingId(), night, ScheduleStatus.NOT_AVAILABLE, null));
+                }
+            }
+            errors.add(claimErrors);
+        }
+
+        allocationRepository.saveAll(allocations);
+        return errors;
+    }
+
+    @Override
+    public void release(String bookingId, Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        allocationRepository.deleteByBookingIdAndScheduleDates(bookingId, dates);
+        releaseUnits(dates);
+    }
+
+    @Override
+    public List<LocalDate> bookedNights(String bookingId) {
+        return allocationRepository.findScheduleDatesByBookingId(bookingId);
+    }
+
+    @Override
+    public List<LocalDate> heldNights(String bookingId) {
+        return allocationRepository.findScheduleDatesByBookingIdAndStatus(bookingId, ScheduleStatus.HELD);
+    }
+
+    @Override
+    public int confirmHold(String bookingId, LocalDateTime now) {
+        return allocationRepository.confirmHold(bookingId, modifiedBy, now);
+    }
+
+    @Override
+    public List<LocalDate> releaseExpiredHolds(Collection<String> bookingIds, LocalDateTime now) {
+        List<LocalDate> expiredDates = allocationRepository.findExpiredHoldDates(bookingIds, now);
+        if (!expiredDates.isEmpty()) {
+            allocationRepository.deleteExpiredHolds(bookingIds, now);
+            releaseUnits(expiredDates);
+        }
+        return expiredDates;
+    }
+
+    @Override
+    public Map<String, LocalDateTime> holds() {
+        Map<String, LocalDateTime> holds = new HashMap<>();
+        for (Allocation allocation : allocationRepository.findByStatus(ScheduleStatus.HELD)) {
+            holds.put(allocation.getBookingId(), allocation.getHeldUntil());
+        }
+        return holds;
+    }
+
+    /**
+     * Read back after this transaction's updates.
+     */
+    @Override
+    public List<DateCapacity> remaining(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return scheduleRepository.findRemainingCapacity(new HashSet<>(dates));
+    }
+
+    @Override
+    public List<DateCapacity> availableCapacity() {
+        return scheduleRepository.findAvailableCapacity();
+    }
+
+    /**
+     * Copies the rows into SCHEDULE_ARCHIVE and ALLOCATION_ARCHIVE with INSERT ... SELECT and deletes
+     * them, four statements per batch.  Past dates are never locked by the booking paths.
+     */
+    @Override
+    public List<LocalDate> archiveBefore(LocalDate cutoff, int limit) {
+        List<LocalDate> dates = scheduleRepository.findScheduleDatesBefore(cutoff, PageRequest.of(0, limit));
+        if (!dates.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            allocationArchiveRepository.archive(dates, now);
+            allocationRepository.deleteByScheduleDates(dates);
+            scheduleArchiveRepository.archive(dates, now);
+            scheduleRepository.deleteByScheduleDates(dates);
+        }
+        return dates;
+    }
+
+    private Allocation allocation(String bookingId, LocalDate scheduleDate, ScheduleStatus status, LocalDateTime heldUntil) {
+        return Allocation.builder()
+                .bookingId(bookingId)
+                .scheduleDate(scheduleDate)
+                .status(status)
+                .heldUntil(heldUntil)
+                .modifiedBy(modifiedBy)
+                .build();
+    }
+
+    /**
+     * Describes the nights in [checkInDate, checkOutDate) that have no unit left.  Called after a
+     * failed claim, before its allocations exist, so the allocations read are all other bookings'.
+     */
+    private List<String> unavailableDates(LocalDate checkInDate, LocalDate checkOutDate) {
+        List<String> errors = new ArrayList<>();
+        Map<LocalDate, Schedule> schedules = scheduleRepository.findByStayNoLock(checkInDate, checkOutDate)
+                .stream().collect(Collectors.toMap(Schedule::getScheduleDate, s -> s));
+        Map<LocalDate, List<String>> bookingIds = allocationRepository.findByStay(checkInDate, checkOutDate)
+                .stream().collect(Collectors.groupingBy(Allocation::getScheduleDate,
+                        Collectors.mapping(Allocation::getBookingId, Collectors.toList())));
+        for (LocalDate ii = checkInDate; ii.isBefore(checkOutDate); ii = ii.plusDays(1L)) {
+            Schedule schedule = schedules.get(ii);
+            List<String> holders = bookingIds.getOrDefault(ii, new ArrayList<>());
+            if (schedule == null) {
+                errors.add( ii + " Date not available.  ");
+            } else if (holders.size() >= schedule.getCapacity()) {
+                errors.add( ii + " Date not available.  " + "Existing Booking ID: " + String.join(", ", holders));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Gives back one unit per occurrence of each date.  Dates released by several bookings at
+     * once are grouped by count, so this is usually a single UPDATE.
+     */
+    private void releaseUnits(Collection<LocalDate> dates) {
+        Map<LocalDate, Long> units = dates.stream()
+                .collect(Collectors.groupingBy(date -> date, Collectors.counting()));
+        Map<Long, List<LocalDate>> datesByUnits = units.keySet().stream()
+                .collect(Collectors.groupingBy(units::get));
+        datesByUnits.forEach((count, released) ->
+                scheduleRepository.releaseDates(released, count.intValue(), modifiedBy, LocalDateTime.now()));
+    }
+}
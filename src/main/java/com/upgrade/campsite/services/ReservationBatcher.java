@@ -0,0 +1,215 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.ReservationResponse;
+import com.upgrade.campsite.exceptions.ReservationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Optional group-commit pipeline for reservations (upgrade.campsite.batching.enabled).
+ *
+ * Callers enqueue their request and wait on a future.  A single worker drains the queue
+ * into micro-batches of up to maxBatchSize requests, waiting at most maxWaitMillis after
+ * the first one arrives, and commits each batch through CampsiteService.reserveBatch()
+ * in one transaction.  Each caller then gets its own ReservationResponse or
+ * ReservationException.
+ *
+ * On shutdown the worker finishes the batch it is collecting or committing, and every request
+ * still queued behind it fails with an IllegalStateException rather than being left waiting.
+ */
+@Slf4j
+@Component
+public class ReservationBatcher {
+
+    private CampsiteService campsiteService;
+
+    private MeterRegistry meterRegistry;
+
+    private Boolean enabled;
+
+    private Integer maxBatchSize;
+
+    private Long maxWaitMillis;
+
+    private BlockingQueue<PendingReservation> queue = new LinkedBlockingQueue<>();
+
+    private ExecutorService worker;
+
+    private volatile boolean stopped;
+
+    /**
+     * Wakes the worker once stopped; never committed.
+     */
+    private static final PendingReservation STOP = new PendingReservation(null, null);
+
+    @Autowired
+    public ReservationBatcher(CampsiteService campsiteService,
+                              MeterRegistry meterRegistry,
+                              @Value("${upgrade.campsite.batching.enabled}") Boolean enabled,
+                              @Value("${upgrade.campsite.batching.maxBatchSize}") Integer maxBatchSize,
+                              @Value("${upgrade.campsite.batching.maxWaitMillis}") Long maxWaitMillis) {
+        this.campsiteService = campsiteService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            worker = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "reservation-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            worker.execute(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        stopped = true;
+        queue.add(STOP);
+        worker.shutdown();
+        if (!worker.awaitTermination(30L, TimeUnit.SECONDS)) {
+            log.warn("Reservation batcher did not finish its batch in time, interrupting it");
+            worker.shutdownNow();
+        }
+        List<PendingReservation> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(this::reject);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<ReservationResponse> submit(ReservationRequest reservationRequest) {
+        PendingReservation pending = new PendingReservation(reservationRequest, new CompletableFuture<>());
+        if (stopped) {
+            reject(pending);
+            return pending.future;
+        }
+        queue.add(pending);
+        // stop() may have drained the queue between the check and the add
+        if (stopped && queue.remove(pending)) {
+            reject(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Requests not yet collected into a batch.
+     */
+    int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Submits the request and waits for its batch to commit.
+     */
+    public ReservationResponse reserve(ReservationRequest reservationRequest) {
+        try {
+            return submit(reservationRequest).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private void run() {
+        while (!stopped) {
+            List<PendingReservation> batch = new ArrayList<>();
+            try {
+                PendingReservation first = queue.take();
+                if (first == STOP) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (batch.size() < maxBatchSize && !stopped) {
+                    PendingReservation next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null || next == STOP) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                // only shutdownNow() interrupts, so give up on what was collected
+                batch.forEach(this::reject);
+                return;
+            }
+            commit(batch);
+        }
+    }
+
+    private void reject(PendingReservation pending) {
+        if (pending != STOP) {
+            pending.future.completeExceptionally(new IllegalStateException("Reservation batcher stopped"));
+        }
+    }
+
+    private void commit(List<PendingReservation> batch) {
+        meterRegistry.summary("campsite.reserve.batch.size").record(batch.size());
+        List<ReservationResponse> reservationResponses;
+        try {
+            reservationResponses = campsiteService.reserveBatch(
+                    batch.stream().map(p -> p.reservationRequest).collect(Collectors.toList()));
+        } catch (RuntimeException ex) {
+            // The batch as a whole failed (e.g. a lock timeout), so fall back to one transaction each.
+            log.warn("Reservation batch of " + batch.size() + " failed, retrying individually", ex);
+            batch.forEach(this::commitAlone);
+            return;
+        }
+
+        for (int ii = 0; ii < batch.size(); ii++) {
+            PendingReservation pending = batch.get(ii);
+            ReservationResponse reservationResponse = reservationResponses.get(ii);
+            if (reservationResponse.getErrors() == null) {
+                pending.future.complete(reservationResponse);
+            } else {
+                pending.future.completeExceptionally(
+                        new ReservationException(pending.reservationRequest, reservationResponse.getErrors(),
+                                reservationResponse.getAlternatives()));
+            }
+        }
+    }
+
+    private void commitAlone(PendingReservation pending) {
+        try {
+            pending.future.complete(campsiteService.reserve(pending.reservationRequest));
+        } catch (RuntimeException ex) {
+            pending.future.completeExceptionally(ex);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingReservation {
+        private ReservationRequest reservationRequest;
+        private CompletableFuture<ReservationResponse> future;
+    }
+}
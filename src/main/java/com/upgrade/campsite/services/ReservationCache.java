@@ -0,0 +1,121 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.events.ReservationChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded LRU cache of booking ID to reservation and the dates it holds, serving
+ * GET /reservation and the nights to lock first for cancel and modify, which BookingTransactions
+ * checks again once the locks are held.
+ *
+ * Entries are evicted after every committed ReservationChangeEvent.  A load that overlaps
+ * an eviction is not stored, so a reader can never put back a value older than the write.
+ * Lookups are counted in the campsite.reservationCache.requests metric.
+ */
+@Component
+public class ReservationCache {
+
+    private ReservationsRepository reservationsRepository;
+
+    private CalendarStore calendarStore;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private final Map<String, CachedReservation> entries;
+
+    private long generation;
+
+    @Autowired
+    public ReservationCache(ReservationsRepository reservationsRepository,
+                            CalendarStore calendarStore,
+                            MeterRegistry meterRegistry,
+                            @Value("${upgrade.campsite.reservationCache.maxSize}") Integer maxSize) {
+        this.reservationsRepository = reservationsRepository;
+        this.calendarStore = calendarStore;
+        this.hits = meterRegistry.counter("campsite.reservationCache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("campsite.reservationCache.requests", "result", "miss");
+        this.entries = new LinkedHashMap<String, CachedReservation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReservation> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public Optional<Reservation> reservation(String bookingId) {
+        return get(bookingId).map(CachedReservation::getReservation);
+    }
+
+    /**
+     * The dates held by bookingId.  Bookings without a reservation, such as holds,
+     * are read from the calendar store every time.
+     */
+    public List<LocalDate> scheduleDates(String bookingId) {
+        Optional<CachedReservation> cached = get(bookingId);
+        if (cached.isPresent()) {
+            return cached.get().getScheduleDates();
+        }
+        return calendarStore.bookedNights(bookingId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onReservationChange(ReservationChangeEvent event) {
+        generation++;
+        event.getBookingIds().forEach(entries::remove);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Optional<CachedReservation> get(String bookingId) {
+        long loadGeneration;
+        synchronized (this) {
+            CachedReservation cached = entries.get(bookingId);
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+
+        Optional<Reservation> reservation = reservationsRepository.findByBookingIdNoLock(bookingId);
+        if (!reservation.isPresent()) {
+            return Optional.empty();
+        }
+        CachedReservation loaded = new CachedReservation(reservation.get(),
+                calendarStore.bookedNights(bookingId));
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(bookingId, loaded);
+            }
+        }
+        return Optional.of(loaded);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedReservation {
+        private final Reservation reservation;
+        private final List<LocalDate> scheduleDates;
+    }
+}
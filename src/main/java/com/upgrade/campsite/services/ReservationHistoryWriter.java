@@ -0,0 +1,132 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.entities.ReservationHistory;
+import com.upgrade.campsite.entities.ReservationHistoryRepository;
+import com.upgrade.campsite.events.ReservationHistoryEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind store of ReservationHistory.
+ *
+ * The entries of a committed ReservationHistoryEvent are offered to a bounded queue, which never
+ * blocks the booking thread: when the queue is full the entries are dropped and counted.  A single
+ * worker drains the queue in batches of up to upgrade.campsite.history.batchSize rows, one transaction
+ * and a few JDBC insert batches each.  The queue depth, the dropped and written rows and the lag from
+ * change to insert are published as campsite.reservationHistory.* metrics.
+ */
+@Slf4j
+@Component
+public class ReservationHistoryWriter {
+
+    private ReservationHistoryRepository reservationHistoryRepository;
+
+    private Integer batchSize;
+
+    private BlockingQueue<ReservationHistory> queue;
+
+    private Counter dropped;
+
+    private Counter written;
+
+    private Timer lag;
+
+    private ExecutorService worker;
+
+    @Autowired
+    public ReservationHistoryWriter(ReservationHistoryRepository reservationHistoryRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${upgrade.campsite.history.queueSize}") Integer queueSize,
+                                    @Value("${upgrade.campsite.history.batchSize}") Integer batchSize) {
+        this.reservationHistoryRepository = reservationHistoryRepository;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.dropped = meterRegistry.counter("campsite.reservationHistory.dropped");
+        this.written = meterRegistry.counter("campsite.reservationHistory.written");
+        this.lag = meterRegistry.timer("campsite.reservationHistory.lag");
+        meterRegistry.gauge("campsite.reservationHistory.queue", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "reservation-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.execute(this::run);
+    }
+
+    /**
+     * Stops the worker and writes whatever is still queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        worker.shutdownNow();
+        worker.awaitTermination(5L, TimeUnit.SECONDS);
+        List<ReservationHistory> batch = new ArrayList<>();
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch = new ArrayList<>();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationHistory(ReservationHistoryEvent event) {
+        for (ReservationHistory entry : event.getEntries()) {
+            if (!queue.offer(entry)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<ReservationHistory> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(List<ReservationHistory> batch) {
+        try {
+            reservationHistoryRepository.saveAll(batch);
+        } catch (RuntimeException ex) {
+            log.warn("Dropped " + batch.size() + " reservation history rows", ex);
+            dropped.increment(batch.size());
+            return;
+        }
+        written.increment(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (ReservationHistory entry : batch) {
+            lag.record(Duration.between(entry.getCreateDateTime(), now));
+        }
+    }
+}
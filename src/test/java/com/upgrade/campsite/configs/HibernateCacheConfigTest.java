@@ -0,0 +1,133 @@
+package com.upgrade.campsite.configs;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.Schedule;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ReservationStatus;
+import com.upgrade.campsite.services.CampsiteService;
+import com.upgrade.campsite.services.StatementRecorder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.hibernateCache.enabled=true",
+                "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.upgrade.campsite.services.StatementRecorder",
+                "spring.datasource.url=jdbc:h2:mem:hibernateCacheTest;DB_CLOSE_DELAY=-1"})
+class HibernateCacheConfigTest {
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+
+    LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(today)
+                .availableEndDate(today.plusDays(30))
+                .build());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void reservationLookupIsCachedUntilItChanges() {
+        String bookingId = reserve(today.plusDays(2), today.plusDays(4));
+        assertTrue(reservationsRepository.findByBookingIdNoLock(bookingId).isPresent());
+
+        statistics.clear();
+        StatementRecorder.take();
+        Reservation reservation = reservationsRepository.findByBookingIdNoLock(bookingId).get();
+        assertEquals(ReservationStatus.RESERVED, reservation.getStatus());
+        assertEquals(1L, statistics.getQueryCacheHitCount());
+        assertEquals(1L, statistics.getDomainDataRegionStatistics(Reservation.class.getName()).getHitCount());
+        assertEquals(Collections.emptyList(), StatementRecorder.take());
+
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+
+        statistics.clear();
+        assertEquals(ReservationStatus.CANCELED, reservationsRepository.findByBookingIdNoLock(bookingId).get().getStatus());
+        assertEquals(0L, statistics.getQueryCacheHitCount());
+        assertEquals(1L, statistics.getQueryCacheMissCount());
+    }
+
+    @Test
+    void stayRangeIsCachedUntilANightIsClaimed() {
+        LocalDate checkInDate = today.plusDays(5);
+        scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(3));
+
+        statistics.clear();
+        StatementRecorder.take();
+        List<Schedule> stay = scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(3));
+        assertEquals(3, stay.size());
+        assertEquals(1L, statistics.getQueryCacheHitCount());
+        assertEquals(Collections.emptyList(), StatementRecorder.take());
+
+        reserve(checkInDate, checkInDate.plusDays(1));
+
+        statistics.clear();
+        stay = scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(3));
+        assertEquals(1, stay.get(0).getBooked().intValue());
+        assertEquals(1L, statistics.getQueryCacheMissCount());
+    }
+
+    @Test
+    void hitRatiosArePublished() {
+        String bookingId = reserve(today.plusDays(8), today.plusDays(9));
+        statistics.clear();
+        reservationsRepository.findByBookingIdNoLock(bookingId);
+        reservationsRepository.findByBookingIdNoLock(bookingId);
+
+        assertEquals(0.5, meterRegistry.get("campsite.hibernateCache.hitRatio").tag("region", "query").gauge().value());
+        assertNotNull(meterRegistry.get("campsite.hibernateCache.hitRatio").tag("region", "reservation").gauge());
+        assertNotNull(meterRegistry.get("campsite.hibernateCache.hitRatio").tag("region", "schedule").gauge());
+    }
+
+    private String reserve(LocalDate checkInDate, LocalDate checkOutDate) {
+        return campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkOutDate)
+                .build()).getBookingId();
+    }
+}
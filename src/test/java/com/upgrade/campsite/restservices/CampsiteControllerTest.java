@@ -2,9 +2,12 @@ package com.upgrade.campsite.restservices;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.upgrade.campsite.dto.*;
+import com.upgrade.campsite.entities.AllocationRepository;
 import com.upgrade.campsite.entities.Reservation;
 import com.upgrade.campsite.entities.ReservationsRepository;
 import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.services.AvailabilityFeed;
+import com.upgrade.campsite.services.AvailabilityResponseCache;
 import com.upgrade.campsite.services.CampsiteService;
 import com.upgrade.campsite.services.IdService;
 import org.junit.jupiter.api.BeforeAll;
@@ -13,19 +16,29 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Period;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -42,6 +55,9 @@ public class CampsiteControllerTest {
     @Autowired
     private ScheduleRepository scheduleRepository;
 
+    @Autowired
+    private AllocationRepository allocationRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -51,12 +67,19 @@ public class CampsiteControllerTest {
     @Autowired
     private CampsiteService campsiteService;
 
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private AvailabilityResponseCache availabilityResponseCache;
+
     LocalDate availableStartDate = LocalDate.now();
     LocalDate availableEndDate = availableStartDate.plusWeeks(8L);
     Period numOfDays = Period.between(availableStartDate, availableEndDate);
 
     @BeforeEach
     void beforeEach() {
+        allocationRepository.deleteAll();
         scheduleRepository.deleteAll();
         reservationsRepository.deleteAll();
         InitializeRequest initializeRequest = InitializeRequest.builder()
@@ -91,6 +114,134 @@ public class CampsiteControllerTest {
 
     }
 
+    @Test
+    public void schedules() throws Exception {
+
+        this.mockMvc.perform(get("/schedules").param("afterId", "0").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5));
+
+        MvcResult result = this.mockMvc.perform(get("/schedules/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String ndjson = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(ChronoUnit.DAYS.between(availableStartDate, availableEndDate) + 1, lines.length);
+        assertEquals(availableStartDate.toString(),
+                objectMapper.readTree(lines[0]).get("scheduleDate").asText());
+    }
+
+    @Test
+    public void conditionalRequests() throws Exception {
+
+        String schedulesRequest = objectMapper.writeValueAsString(SchedulesRequest.builder()
+                .startDate(availableStartDate)
+                .endDate(availableEndDate)
+                .build());
+
+        String availableETag = this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(schedulesRequest))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String schedulesETag = this.mockMvc.perform(get("/schedules"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(schedulesRequest)
+                        .header(HttpHeaders.IF_NONE_MATCH, availableETag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/schedules").header(HttpHeaders.IF_NONE_MATCH, schedulesETag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, schedulesETag));
+
+        // another window of the same version is a different representation
+        this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(SchedulesRequest.builder()
+                                .startDate(availableStartDate.plusDays(1))
+                                .endDate(availableEndDate)
+                                .build()))
+                        .header(HttpHeaders.IF_NONE_MATCH, availableETag))
+                .andExpect(status().isOk());
+
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("Michael")
+                .lastName("Jordan")
+                .email("michael@jordan.com")
+                .checkInDate(availableStartDate.plusDays(2))
+                .checkOutDate(availableStartDate.plusDays(4))
+                .build());
+
+        String changedETag = this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(schedulesRequest)
+                        .header(HttpHeaders.IF_NONE_MATCH, availableETag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(availableETag, changedETag);
+        this.mockMvc.perform(get("/schedules").header(HttpHeaders.IF_NONE_MATCH, schedulesETag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void availableFromResponseCache() throws Exception {
+
+        SchedulesRequest bookable = SchedulesRequest.builder()
+                .startDate(LocalDate.now().plusDays(1L))
+                .endDate(LocalDate.now().plusDays(30L))
+                .build();
+        for (int ii = 0; ii < 100 && availabilityResponseCache.get(bookable) == null; ii++) {
+            Thread.sleep(20L);
+        }
+        AvailabilityResponseCache.Body body = availabilityResponseCache.get(bookable);
+
+        this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookable))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().bytes(body.gzip()));
+        this.mockMvc.perform(post("/available")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookable)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.availableDates.length()").value(30));
+    }
+
+    @Test
+    public void availableStream() throws Exception {
+
+        String lastEventId = availabilityFeed.currentEventId();
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("Michael")
+                .lastName("Jordan")
+                .email("michael@jordan.com")
+                .checkInDate(availableStartDate.plusDays(2))
+                .checkOutDate(availableStartDate.plusDays(4))
+                .build());
+
+        // a reconnecting client is sent the delta it missed
+        MvcResult result = this.mockMvc.perform(get("/available/stream").header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String events = "";
+        for (int ii = 0; ii < 50 && !events.contains("NOT_AVAILABLE"); ii++) {
+            Thread.sleep(20L);
+            events = result.getResponse().getContentAsString();
+        }
+        assertTrue(events.contains("event:availability"));
+        assertTrue(events.contains("\"" + availableStartDate.plusDays(3) + "\":\"NOT_AVAILABLE\""));
+    }
+
     @Test
     public void cancel() throws Exception {
 
@@ -0,0 +1,77 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.AvailabilityDelta;
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties")
+class AvailabilityFeedTest {
+
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    LocalDate checkInDate = LocalDate.now().plusDays(3L);
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(LocalDate.now())
+                .availableEndDate(LocalDate.now().plusDays(20L))
+                .build());
+    }
+
+    @Test
+    void since() {
+        String lastEventId = availabilityFeed.currentEventId();
+
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build()).getBookingId();
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+
+        List<AvailabilityDelta> missed = availabilityFeed.since(lastEventId);
+        assertEquals(2, missed.size());
+        assertEquals(missed.get(0).getSequence() + 1, (long) missed.get(1).getSequence());
+        assertEquals(ScheduleStatus.NOT_AVAILABLE, missed.get(0).getChanges().get(checkInDate));
+        assertEquals(ScheduleStatus.AVAILABLE, missed.get(1).getChanges().get(checkInDate.plusDays(1)));
+
+        assertTrue(availabilityFeed.since(availabilityFeed.currentEventId()).isEmpty());
+        // ids from before a restart cannot be resumed
+        assertNull(availabilityFeed.since("1-1"));
+    }
+}
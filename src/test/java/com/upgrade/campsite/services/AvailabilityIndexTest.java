@@ -0,0 +1,73 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AvailabilityIndexTest {
+
+    private final LocalDate startDate = LocalDate.of(2020, 7, 1);
+
+    private AvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    void beforeEach() {
+        CalendarStore calendarStore = mock(CalendarStore.class);
+        when(calendarStore.availableCapacity())
+                .thenReturn(Arrays.asList(new DateCapacity(startDate, 1), new DateCapacity(startDate.plusDays(1), 2),
+                        new DateCapacity(startDate.plusDays(2), 1)));
+        availabilityIndex = new AvailabilityIndex(calendarStore, mock(CalendarJournal.class));
+        availabilityIndex.reload();
+    }
+
+    @Test
+    void reload() {
+        assertEquals(Arrays.asList(startDate, startDate.plusDays(1), startDate.plusDays(2)),
+                availabilityIndex.availableDates(startDate.minusDays(5), startDate.plusDays(5)));
+        assertEquals(Collections.singletonList(startDate.plusDays(1)),
+                availabilityIndex.availableDates(startDate.plusDays(1), startDate.plusDays(1)));
+    }
+
+    @Test
+    void onScheduleChange() {
+        availabilityIndex.onScheduleChange(
+                ScheduleChangeEvent.of(Collections.singletonList(startDate.plusDays(1)), ScheduleStatus.NOT_AVAILABLE));
+        availabilityIndex.onScheduleChange(
+                ScheduleChangeEvent.of(Collections.singletonList(startDate.minusDays(2)), ScheduleStatus.AVAILABLE));
+
+        assertFalse(availabilityIndex.isAvailable(startDate.plusDays(1)));
+        assertTrue(availabilityIndex.isAvailable(startDate.minusDays(2)));
+        assertEquals(Arrays.asList(startDate.minusDays(2), startDate, startDate.plusDays(2)),
+                availabilityIndex.availableDates(startDate.minusDays(5), startDate.plusDays(5)));
+    }
+
+    @Test
+    void remainingCapacity() {
+        assertEquals(Arrays.asList(1, 2, 1),
+                new ArrayList<>(availabilityIndex.remainingCapacity(startDate, startDate.plusDays(3)).values()));
+
+        availabilityIndex.onScheduleChange(ScheduleChangeEvent.of(Arrays.asList(
+                new DateCapacity(startDate, 0), new DateCapacity(startDate.plusDays(1), 1))));
+
+        assertFalse(availabilityIndex.isAvailable(startDate));
+        assertTrue(availabilityIndex.isAvailable(startDate.plusDays(1)));
+        assertEquals(Arrays.asList(1, 1),
+                new ArrayList<>(availabilityIndex.remainingCapacity(startDate, startDate.plusDays(2)).values()));
+    }
+
+    @Test
+    void availableDatesWithoutRange() {
+        assertTrue(availabilityIndex.availableDates(null, startDate).isEmpty());
+    }
+}
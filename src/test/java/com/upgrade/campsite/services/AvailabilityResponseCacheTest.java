@@ -0,0 +1,103 @@
+package com.upgrade.campsite.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.SchedulesRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties")
+class AvailabilityResponseCacheTest {
+
+    @Autowired
+    private AvailabilityResponseCache availabilityResponseCache;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(LocalDate.now())
+                .availableEndDate(LocalDate.now().plusMonths(2L))
+                .build());
+    }
+
+    @Test
+    void rebuiltAfterCommit() throws Exception {
+        List<SchedulesRequest> windows = availabilityResponseCache.windows(LocalDate.now());
+        SchedulesRequest bookable = windows.get(0);
+        awaitCached(windows);
+
+        LocalDate checkInDate = bookable.getStartDate().plusDays(1L);
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(1L))
+                .build());
+        awaitCached(windows);
+
+        AvailabilityResponseCache.Body body = availabilityResponseCache.get(bookable);
+        assertArrayEquals(objectMapper.writeValueAsBytes(campsiteService.available(bookable)), body.json());
+        assertArrayEquals(body.json(), gunzip(body.gzip()));
+        assertFalse(objectMapper.readTree(body.json()).get("availableDates").toString()
+                .contains(checkInDate.toString()));
+        assertNull(availabilityResponseCache.get(SchedulesRequest.builder()
+                .startDate(bookable.getStartDate())
+                .endDate(bookable.getEndDate().plusDays(1L))
+                .build()));
+    }
+
+    private void awaitCached(List<SchedulesRequest> windows) throws InterruptedException {
+        for (int ii = 0; ii < 100 && !windows.stream().allMatch(w -> availabilityResponseCache.get(w) != null); ii++) {
+            Thread.sleep(20L);
+        }
+        assertEquals(windows.size(), availabilityResponseCache.size());
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
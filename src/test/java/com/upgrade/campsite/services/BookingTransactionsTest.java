@@ -0,0 +1,108 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ReservationStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.lockingMode=OPTIMISTIC",
+                "spring.datasource.url=jdbc:h2:mem:bookingTransactionsTest;DB_CLOSE_DELAY=-1"})
+class BookingTransactionsTest {
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    LocalDate availableStartDate = LocalDate.now();
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(availableStartDate)
+                .availableEndDate(availableStartDate.plusWeeks(8L))
+                .build());
+    }
+
+    /**
+     * A concurrent transaction updates the reservation after cancel() has read it, so the
+     * first cancel attempt fails its @Version check and the second attempt succeeds.
+     */
+    @Test
+    void retriesOptimisticLockingConflicts() throws InterruptedException {
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(availableStartDate.plusDays(2))
+                .checkOutDate(availableStartDate.plusDays(4))
+                .build()).getBookingId();
+        double retries = meterRegistry.counter("campsite.booking.retries", "operation", "cancel").count();
+
+        CountDownLatch updated = new CountDownLatch(1);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CompletableFuture<Void> concurrentUpdate = CompletableFuture.runAsync(() ->
+                transactionTemplate.execute(status -> {
+                    Reservation reservation = reservationsRepository.findByBookingIdNoLock(bookingId).get();
+                    reservation.setEmail("f2@l.com");
+                    entityManager.flush();
+                    updated.countDown();
+                    try {
+                        Thread.sleep(300L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }));
+
+        updated.await();
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+        concurrentUpdate.join();
+
+        Reservation reservation = reservationsRepository.findByBookingIdNoLock(bookingId).get();
+        assertEquals(ReservationStatus.CANCELED, reservation.getStatus());
+        assertEquals("f2@l.com", reservation.getEmail());
+        assertEquals(retries + 1,
+                meterRegistry.counter("campsite.booking.retries", "operation", "cancel").count());
+    }
+}
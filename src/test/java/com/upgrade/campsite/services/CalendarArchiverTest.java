@@ -0,0 +1,141 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.entities.Allocation;
+import com.upgrade.campsite.entities.AllocationArchiveRepository;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationArchiveRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleArchiveRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ReservationStatus;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.archive.batchSize=3",
+                "spring.datasource.url=jdbc:h2:mem:archiveTest;DB_CLOSE_DELAY=-1"})
+class CalendarArchiverTest {
+
+    @Autowired
+    private CalendarArchiver calendarArchiver;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationArchiveRepository reservationArchiveRepository;
+
+    @Autowired
+    private ScheduleArchiveRepository scheduleArchiveRepository;
+
+    @Autowired
+    private AllocationArchiveRepository allocationArchiveRepository;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private CalendarVersion calendarVersion;
+
+    LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        allocationArchiveRepository.deleteAll();
+        scheduleArchiveRepository.deleteAll();
+        reservationArchiveRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(today.minusDays(10))
+                .availableEndDate(today.plusDays(10))
+                .build());
+    }
+
+    @Test
+    void archivesPastDatesInBatches() {
+        LocalDate cutoff = today.minusDays(2);
+        reservation("PAST1", today.minusDays(8), today.minusDays(6), ReservationStatus.RESERVED);
+        allocationRepository.saveAll(Arrays.asList(allocation("PAST1", today.minusDays(8)), allocation("PAST1", today.minusDays(7))));
+        reservation("LATE1", today.minusDays(3), today.plusDays(1), ReservationStatus.RESERVED);
+        reservation("NEXT1", today.plusDays(3), today.plusDays(4), ReservationStatus.RESERVED);
+        String eTag = calendarVersion.eTag();
+        assertEquals(8, availabilityIndex.remainingCapacity(today.minusDays(10), cutoff.minusDays(1)).size());
+
+        assertEquals(8, calendarArchiver.archiveSchedules(cutoff));
+        // GET /schedules lists fewer rows, so its ETag changes, and the indexes drop the archived dates
+        assertNotEquals(eTag, calendarVersion.eTag());
+        assertTrue(availabilityIndex.remainingCapacity(today.minusDays(10), cutoff.minusDays(1)).isEmpty());
+        assertEquals(1, availabilityIndex.remainingCapacity(cutoff, cutoff).size());
+        assertEquals(1, calendarArchiver.archiveReservations(cutoff));
+
+        assertEquals(cutoff, scheduleRepository.findMinScheduleDate());
+        assertEquals(13, scheduleRepository.count());
+        assertEquals(0, allocationRepository.count());
+        assertEquals(2, allocationArchiveRepository.findByBookingIdOrderByScheduleDate("PAST1").size());
+        assertFalse(reservationsRepository.findByBookingIdNoLock("PAST1").isPresent());
+        assertTrue(reservationsRepository.findByBookingIdNoLock("LATE1").isPresent());
+
+        assertEquals(today.minusDays(6), campsiteService.archivedReservation("PAST1").get().getCheckOutDate());
+        assertEquals(3, campsiteService.archivedSchedules(today.minusDays(10), today.minusDays(8), null).size());
+        assertEquals(8, campsiteService.archivedSchedules(today.minusDays(30), today, null).size());
+        assertEquals(1, campsiteService.archivedReservations(0L, null).size());
+
+        assertEquals(0, calendarArchiver.archiveSchedules(cutoff));
+        assertEquals(0, calendarArchiver.archiveReservations(cutoff));
+    }
+
+    @Test
+    void archivesCancelledReservations() {
+        reservation("CANC1", today.plusDays(5), today.plusDays(6), ReservationStatus.CANCELED);
+        reservation("NEXT1", today.plusDays(3), today.plusDays(4), ReservationStatus.RESERVED);
+
+        // cancelled just now, so only a cutoff after today archives it
+        assertEquals(0, calendarArchiver.archiveReservations(today));
+        assertEquals(1, calendarArchiver.archiveReservations(today.plusDays(1)));
+        assertEquals(ReservationStatus.CANCELED, campsiteService.archivedReservation("CANC1").get().getStatus());
+        assertTrue(reservationsRepository.findByBookingIdNoLock("NEXT1").isPresent());
+    }
+
+    private void reservation(String bookingId, LocalDate checkInDate, LocalDate checkOutDate, ReservationStatus status) {
+        reservationsRepository.save(Reservation.builder()
+                .bookingId(bookingId)
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkOutDate)
+                .status(status)
+                .build());
+    }
+
+    private Allocation allocation(String bookingId, LocalDate scheduleDate) {
+        return Allocation.builder()
+                .bookingId(bookingId)
+                .scheduleDate(scheduleDate)
+                .status(ScheduleStatus.NOT_AVAILABLE)
+                .build();
+    }
+}
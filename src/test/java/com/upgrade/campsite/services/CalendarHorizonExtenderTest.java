@@ -0,0 +1,64 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties")
+class CalendarHorizonExtenderTest {
+
+    @Autowired
+    private CalendarHorizonExtender calendarHorizonExtender;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    LocalDate availableStartDate = LocalDate.now().plusDays(1L);
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(availableStartDate)
+                .availableEndDate(availableStartDate.plusDays(10L))
+                .build());
+    }
+
+    @Test
+    void extend() {
+        LocalDate horizon = availableStartDate.plusMonths(2L);
+
+        // Only the dates after the last existing schedule are initialized.
+        assertEquals(availableStartDate.plusDays(11L),
+                calendarHorizonExtender.extend().getInitializeRequest().getAvailableStartDate());
+        assertEquals(horizon, scheduleRepository.findMaxScheduleDate());
+        assertEquals(horizon.toEpochDay() - availableStartDate.toEpochDay() + 1, scheduleRepository.count());
+
+        // Nothing left to do until tomorrow.
+        assertTrue(calendarHorizonExtender.extend().getAvailableDates() == null);
+        assertEquals(horizon, scheduleRepository.findMaxScheduleDate());
+    }
+}
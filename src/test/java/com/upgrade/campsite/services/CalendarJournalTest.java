@@ -0,0 +1,174 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.CalendarStoreType;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CalendarJournalTest {
+
+    private final LocalDate startDate = LocalDate.of(2020, 7, 1);
+
+    @TempDir
+    Path directory;
+
+    private ScheduleRepository scheduleRepository;
+
+    private List<DateCapacity> database;
+
+    @BeforeEach
+    void beforeEach() {
+        database = new ArrayList<>();
+        for (int ii = 0; ii < 10; ii++) {
+            database.add(new DateCapacity(startDate.plusDays(ii), 2));
+        }
+        scheduleRepository = mock(ScheduleRepository.class);
+        when(scheduleRepository.findAllCapacity()).thenAnswer(invocation -> new ArrayList<>(database));
+        when(scheduleRepository.findCapacityAfter(any())).thenReturn(Collections.emptyList());
+        when(scheduleRepository.count()).thenAnswer(invocation -> (long) database.size());
+        when(scheduleRepository.findTotalRemaining()).thenAnswer(invocation ->
+                database.stream().mapToLong(DateCapacity::getRemaining).sum());
+        when(scheduleRepository.findDateWeightedRemaining()).thenAnswer(invocation -> database.stream()
+                .mapToLong(capacity -> CalendarJournal.dateWeight(capacity.getScheduleDate()) * capacity.getRemaining())
+                .sum());
+        when(scheduleRepository.findMinScheduleDate()).thenAnswer(invocation ->
+                database.isEmpty() ? null : database.get(0).getScheduleDate());
+    }
+
+    @Test
+    void restartsFromSnapshotAndJournal() throws IOException {
+        CalendarJournal journal = journal(4096);
+        journal.recover();
+        verify(scheduleRepository).findAllCapacity();
+
+        change(journal, 1, 0);
+        change(journal, 2, 1);
+        // the process dies without a final snapshot
+        journal = journal(4096);
+        journal.recover();
+
+        verify(scheduleRepository, times(1)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    @Test
+    void fullJournalIsFoldedIntoTheSnapshot() throws IOException {
+        // room for three single-date records
+        CalendarJournal journal = journal(3 * 28 + 4);
+        journal.recover();
+        for (int ii = 0; ii < 10; ii++) {
+            change(journal, ii, ii % 3);
+        }
+
+        journal = journal(3 * 28 + 4);
+        journal.recover();
+
+        verify(scheduleRepository, times(1)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    @Test
+    void archivedDatesAreDropped() throws IOException {
+        CalendarJournal journal = journal(4096);
+        journal.recover();
+        journal.close();
+
+        database.subList(0, 3).clear();
+        journal = journal(4096);
+        journal.recover();
+
+        verify(scheduleRepository, times(1)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    @Test
+    void removedDatesAreJournaled() throws IOException {
+        CalendarJournal journal = journal(4096);
+        journal.recover();
+        DateCapacity last = database.remove(9);
+        journal.onScheduleChange(ScheduleChangeEvent.removed(Collections.singletonList(last.getScheduleDate())));
+        assertEquals(database, journal.capacities().get());
+
+        journal = journal(4096);
+        journal.recover();
+
+        verify(scheduleRepository, times(1)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    @Test
+    void corruptRecordFallsBackToDatabase() throws IOException {
+        CalendarJournal journal = journal(4096);
+        journal.recover();
+        change(journal, 1, 0);
+
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("calendar.journal").toFile(), "rw")) {
+            file.seek(20L);
+            file.write(0x7f);
+        }
+
+        journal = journal(4096);
+        journal.recover();
+
+        verify(scheduleRepository, times(2)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    /**
+     * A modify moving a unit between dates keeps the count and the total, but not the weighted sum.
+     */
+    @Test
+    void unjournaledMoveFallsBackToDatabase() throws IOException {
+        CalendarJournal journal = journal(4096);
+        journal.recover();
+        journal.close();
+
+        database.set(1, new DateCapacity(startDate.plusDays(1), 1));
+        database.set(5, new DateCapacity(startDate.plusDays(5), 3));
+
+        journal = journal(4096);
+        journal.recover();
+
+        verify(scheduleRepository, times(2)).findAllCapacity();
+        assertEquals(database, journal.capacities().get());
+    }
+
+    @Test
+    void disabled() {
+        CalendarJournal journal = new CalendarJournal(scheduleRepository, CalendarStoreType.JPA, false, directory.toString(), 4096);
+        journal.recover();
+        journal.onScheduleChange(ScheduleChangeEvent.of(Collections.singletonList(new DateCapacity(startDate, 0))));
+
+        assertFalse(journal.capacities().isPresent());
+        verifyNoInteractions(scheduleRepository);
+    }
+
+    private CalendarJournal journal(int sizeBytes) {
+        return new CalendarJournal(scheduleRepository, CalendarStoreType.JPA, true, directory.toString(), sizeBytes);
+    }
+
+    /**
+     * Commits a change to the fake database and hands the event to the journal.
+     */
+    private void change(CalendarJournal journal, int day, int units) {
+        DateCapacity capacity = new DateCapacity(startDate.plusDays(day), units);
+        database.set(day, capacity);
+        journal.onScheduleChange(ScheduleChangeEvent.of(Arrays.asList(capacity)));
+    }
+}
@@ -1,40 +1,51 @@
 package com.upgrade.campsite.services;
 
 import com.upgrade.campsite.dto.*;
+import com.upgrade.campsite.entities.Allocation;
+import com.upgrade.campsite.entities.AllocationRepository;
 import com.upgrade.campsite.entities.Reservation;
 import com.upgrade.campsite.entities.ReservationsRepository;
 import com.upgrade.campsite.entities.Schedule;
 import com.upgrade.campsite.entities.ScheduleRepository;
 import com.upgrade.campsite.enums.ReservationStatus;
+import com.upgrade.campsite.enums.ScheduleStatus;
 import com.upgrade.campsite.exceptions.CampsiteException;
+import com.upgrade.campsite.exceptions.ConfirmationException;
 import com.upgrade.campsite.exceptions.ReservationException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.test.context.TestPropertySource;
-import org.springframework.transaction.TransactionSystemException;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PessimisticLockException;
 import javax.transaction.Transactional;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.Period;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @Slf4j
 @SpringBootTest
-@TestPropertySource(locations="classpath:application-test.properties")
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.upgrade.campsite.services.StatementRecorder")
 class CampsiteServiceTest {
 
     @Autowired
@@ -46,12 +57,24 @@ class CampsiteServiceTest {
     @Autowired
     private ScheduleRepository scheduleRepository;
 
+    @Autowired
+    private AllocationRepository allocationRepository;
+
     @Autowired
     private EntityManager entityManager;
 
     @Autowired
     private IdService idService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private DateLockManager dateLockManager;
+
     LocalDate availableStartDate = LocalDate.now();
     LocalDate availableEndDate = availableStartDate.plusWeeks(8L);
     Long numOfDays = ChronoUnit.DAYS.between(availableStartDate, availableEndDate) + 1;
@@ -59,6 +82,7 @@ class CampsiteServiceTest {
 
     @BeforeEach
     void beforeEach() {
+        allocationRepository.deleteAll();
         scheduleRepository.deleteAll();
         reservationsRepository.deleteAll();
         InitializeRequest initializeRequest = InitializeRequest.builder()
@@ -107,6 +131,9 @@ class CampsiteServiceTest {
      *  will take prevent updating of records that have been updated by other
      *  transactions.  (Not in this test.)
      *
+     *  The second request overlaps the first, so it waits on the in-JVM date locks
+     *  and gives up with CannotAcquireLockException once the lock timeout passes.
+     *
      * @throws InterruptedException
      */
     @Test
@@ -156,7 +183,7 @@ class CampsiteServiceTest {
                 () -> {
                     ReservationResponse reservationResponse = null;
                     try {
-                        assertThrows(TransactionSystemException.class, () -> {
+                        assertThrows(CannotAcquireLockException.class, () -> {
                             campsiteService.slowReserve(reservationRequest2, 5000L);
                         });
                         ;
@@ -177,14 +204,161 @@ class CampsiteServiceTest {
         Optional<Reservation> reservation1 = reservationsRepository.findByBookingIdNoLock(bookingId);
         assertTrue(reservation1.isPresent());
 
-        List<Schedule> schedules = scheduleRepository.findByBookingIdNoLock(bookingId);
-        assertNotEquals(0, schedules.size());
+        List<Allocation> allocations = allocationRepository.findByBookingId(bookingId);
+        assertNotEquals(0, allocations.size());
 
         assertNull(future2.get());
 
         log.info("end");
     }
 
+    /**
+     * Two slow reservations for disjoint stays hold their date locks at the same time,
+     * so neither blocks the other.
+     */
+    @Test
+    void testAsynchronousDisjoint() throws InterruptedException, ExecutionException {
+
+        LocalDate startDate = LocalDate.now().plusDays(5L);
+
+        ReservationRequest reservationRequest1 = ReservationRequest.builder()
+                .firstName("f1")
+                .lastName("l1")
+                .email("f1@l1.com")
+                .checkInDate(startDate)
+                .checkOutDate(startDate.plusDays(3L))
+                .build();
+        ReservationRequest reservationRequest2 = ReservationRequest.builder()
+                .firstName("f2")
+                .lastName("l2")
+                .email("f2@l2.com")
+                .checkInDate(startDate.plusDays(3L))
+                .checkOutDate(startDate.plusDays(6L))
+                .build();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<ReservationResponse> future1 = CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return campsiteService.slowReserve(reservationRequest1, 1000L);
+                    } catch (InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executorService);
+        CompletableFuture<ReservationResponse> future2 = CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return campsiteService.slowReserve(reservationRequest2, 1000L);
+                    } catch (InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executorService);
+
+        assertNotNull(future1.get().getBookingId());
+        assertNotNull(future2.get().getBookingId());
+        assertTrue(System.currentTimeMillis() - start < 4000L);
+    }
+
+    /**
+     * Sequence ids let Hibernate batch inserts and updates, so the number of JDBC statements
+     * per operation does not grow with the number of schedule rows written.  Only the statements
+     * prepared on the test thread are counted, so ReservationHistoryWriter's inserts are not.
+     */
+    @Test
+    void statementCounts() throws InterruptedException {
+        Counter historyWritten = meterRegistry.get("campsite.reservationHistory.written").counter();
+        double historyRows = historyWritten.count();
+        LocalDate checkInDate = availableStartDate.plusDays(3);
+
+        StatementRecorder.take();
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(3))
+                .build()).getBookingId();
+        // the booking ID lookup, claim update, the remaining capacity read, allocation and reservation inserts
+        assertStatements(5);
+        awaitHistory(historyWritten, historyRows += 1);
+
+        // GET /reservation puts the booking in ReservationCache, which then supplies the nights to lock
+        campsiteService.reservation(bookingId);
+        StatementRecorder.take();
+        ModificationResponse modificationResponse = campsiteService.modify(ModificationRequest.builder()
+                .bookingId(bookingId)
+                .checkInDate(checkInDate.plusDays(1))
+                .checkOutDate(checkInDate.plusDays(4))
+                .build());
+        assertEquals(Arrays.asList(checkInDate), modificationResponse.getReleasedDates());
+        assertEquals(Arrays.asList(checkInDate.plusDays(3)), modificationResponse.getAddedDates());
+        // the booked night read checking the locks, the locked reservation read and its version bump,
+        // the booked night read for the delta, the reservation update, one allocation delete and one
+        // release, one claim, the remaining capacity read and one allocation insert
+        assertStatements(10);
+        awaitHistory(historyWritten, historyRows += 1);
+
+        StatementRecorder.take();
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+        // modify evicted the booking, so the date locks reload it into ReservationCache with two reads;
+        // the booked night read checking the locks, the locked reservation read and its version bump, the
+        // booked night read, the reservation update, one allocation delete and one counter update for the
+        // three nights, and the remaining capacity read
+        assertStatements(10);
+        awaitHistory(historyWritten, historyRows += 1);
+
+        StatementRecorder.take();
+        campsiteService.reserveBatch(Arrays.asList(
+                ReservationRequest.builder().firstName("f1").lastName("l").email("f@l.com")
+                        .checkInDate(checkInDate).checkOutDate(checkInDate.plusDays(3)).build(),
+                ReservationRequest.builder().firstName("f2").lastName("l").email("f@l.com")
+                        .checkInDate(checkInDate.plusDays(3)).checkOutDate(checkInDate.plusDays(6)).build()));
+        // two booking ID lookups, the locked range read, then the reservation inserts, the six schedule
+        // updates and the six allocation inserts as three batches, then the remaining capacity read
+        assertStatements(7);
+        awaitHistory(historyWritten, historyRows += 2);
+
+        StatementRecorder.take();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(availableEndDate.plusDays(1))
+                .availableEndDate(availableEndDate.plusDays(100))
+                .build());
+        // one range lookup and one batched insert for 100 new dates
+        assertStatements(2);
+    }
+
+    private void assertStatements(int expected) {
+        List<String> statements = statements();
+        assertEquals(expected, statements.size(), statements::toString);
+    }
+
+    /**
+     * Returns the statements the test thread prepared since the last call, without the sequence fetches.
+     * The pooled sequences are fetched at most twice per operation: twice on first use, then once per 50 ids.
+     */
+    private List<String> statements() {
+        List<String> statements = StatementRecorder.take();
+        statements.stream()
+                .filter(sql -> sql.startsWith("call next value for"))
+                .collect(Collectors.groupingBy(sql -> sql, Collectors.counting()))
+                .forEach((sql, fetches) -> assertTrue(fetches <= 2, sql + " ran " + fetches + " times"));
+        statements.removeIf(sql -> sql.startsWith("call next value for"));
+        return statements;
+    }
+
+    /**
+     * Waits for ReservationHistoryWriter to write the rows of an operation, failing after five seconds.
+     */
+    private void awaitHistory(Counter historyWritten, double rows) throws InterruptedException {
+        for (int ii = 0; ii < 50 && historyWritten.count() < rows; ii++) {
+            Thread.sleep(100L);
+        }
+        assertTrue(historyWritten.count() >= rows, "ReservationHistoryWriter wrote "
+                + historyWritten.count() + " of " + rows + " history rows");
+    }
+
     @Test
     void validateMaxDays() {
         LocalDate checkInDate = LocalDate.of(2020, 01, 01);
@@ -257,24 +431,371 @@ class CampsiteServiceTest {
 
     @Test
     void reservations() {
+        ReservationResponse reservationResponse = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(availableStartDate.plusDays(2))
+                .checkOutDate(availableStartDate.plusDays(4))
+                .build());
+        String bookingId = reservationResponse.getBookingId();
+        Long version = reservationsRepository.findByBookingIdNoLock(bookingId).get().getVersion();
+
+        // Reads must not take locks, so the version stays the same.
+        assertEquals(bookingId, campsiteService.reservation(bookingId).get().getBookingId());
+        assertEquals(1, campsiteService.reservations(0L, null).size());
+        campsiteService.schedules(0L, null);
+        campsiteService.streamReservations(reservation -> { });
+
+        assertEquals(version, reservationsRepository.findByBookingIdNoLock(bookingId).get().getVersion());
     }
 
     @Test
     void schedules() {
+        // keyset pages cover every schedule exactly once, in id order
+        List<Schedule> pages = new ArrayList<>();
+        List<Schedule> page = campsiteService.schedules(0L, 10);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 10);
+            pages.addAll(page);
+            page = campsiteService.schedules(page.get(page.size() - 1).getId(), 10);
+        }
+        assertEquals(numOfDays.intValue(), pages.size());
+
+        List<Schedule> streamed = new ArrayList<>();
+        campsiteService.streamSchedules(streamed::add);
+        assertEquals(pages.stream().map(Schedule::getId).collect(Collectors.toList()),
+                streamed.stream().map(Schedule::getId).collect(Collectors.toList()));
+        assertFalse(entityManager.contains(streamed.get(0)));
     }
 
     @Test
     void available() {
+        LocalDate checkInDate = availableStartDate.plusDays(3);
+        LocalDate checkOutDate = checkInDate.plusDays(2);
+        SchedulesRequest schedulesRequest = SchedulesRequest.builder()
+                .startDate(availableStartDate)
+                .endDate(availableEndDate)
+                .build();
+
+        assertEquals(numOfDays.intValue(), campsiteService.available(schedulesRequest).getAvailableDates().size());
+
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkOutDate)
+                .build());
+
+        List<LocalDate> availableDates = campsiteService.available(schedulesRequest).getAvailableDates();
+        assertEquals(numOfDays.intValue() - 2, availableDates.size());
+        assertFalse(availableDates.contains(checkInDate));
+        assertFalse(availableDates.contains(checkInDate.plusDays(1)));
+        assertTrue(availableDates.contains(checkOutDate));
+    }
+
+    @Test
+    void searchWindows() {
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(availableStartDate.plusDays(2))
+                .checkOutDate(availableStartDate.plusDays(3))
+                .build());
+
+        WindowSearchResponse response = campsiteService.searchWindows(WindowSearchRequest.builder()
+                .startDate(availableStartDate.plusDays(1))
+                .endDate(availableEndDate)
+                .nights(3)
+                .limit(2)
+                .build());
+        assertNull(response.getErrors());
+        assertEquals(Arrays.asList(
+                StayWindow.builder().checkInDate(availableStartDate.plusDays(3)).checkOutDate(availableStartDate.plusDays(6)).build(),
+                StayWindow.builder().checkInDate(availableStartDate.plusDays(4)).checkOutDate(availableStartDate.plusDays(7)).build()),
+                response.getWindows());
+
+        assertEquals(1, campsiteService.searchWindows(WindowSearchRequest.builder()
+                .startDate(availableStartDate)
+                .endDate(availableEndDate)
+                .nights(4)
+                .build()).getErrors().size());
+    }
+
+    @Test
+    void availableCoalesced() throws InterruptedException, ExecutionException {
+        SchedulesRequest schedulesRequest = SchedulesRequest.builder()
+                .startDate(availableStartDate)
+                .endDate(availableEndDate)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SchedulesResponse>> futures = new ArrayList<>();
+        for (int ii = 0; ii < 400; ii++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return campsiteService.available(schedulesRequest);
+            }));
+        }
+        start.countDown();
+        for (Future<SchedulesResponse> future : futures) {
+            assertEquals(numOfDays.intValue(), future.get().getAvailableDates().size());
+        }
+        executor.shutdown();
+        assertEquals(0, campsiteService.availabilityInFlight());
     }
 
     @Test
     void reserve() {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+        ReservationResponse reservationResponse = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(3))
+                .build());
+
+        List<Allocation> allocations = allocationRepository.findByBookingId(reservationResponse.getBookingId());
+        assertEquals(3, allocations.size());
+        allocations.forEach(a -> assertEquals(ScheduleStatus.NOT_AVAILABLE, a.getStatus()));
+        scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(3))
+                .forEach(s -> assertEquals(ScheduleStatus.NOT_AVAILABLE, s.getStatus()));
+
+        // Overlaps the last night only; the partially claimed nights must be rolled back.
+        ReservationException ex = assertThrows(ReservationException.class, () ->
+                campsiteService.reserve(ReservationRequest.builder()
+                        .firstName("f2")
+                        .lastName("l2")
+                        .email("f2@l2.com")
+                        .checkInDate(checkInDate.plusDays(2))
+                        .checkOutDate(checkInDate.plusDays(5))
+                        .build()));
+        assertEquals(1, ex.getErrors().size());
+        assertTrue(ex.getErrors().get(0).contains(reservationResponse.getBookingId()));
+        assertEquals(ScheduleStatus.AVAILABLE,
+                scheduleRepository.findByStayNoLock(checkInDate.plusDays(3), checkInDate.plusDays(4)).get(0).getStatus());
+
+        // the nearest free stays of the same length are suggested, nearest check-in first
+        assertEquals(Arrays.asList(checkInDate.plusDays(3), checkInDate.plusDays(4), checkInDate.plusDays(5)),
+                ex.getAlternatives().stream().map(StayWindow::getCheckInDate).collect(Collectors.toList()));
+        assertEquals(checkInDate.plusDays(6), ex.getAlternatives().get(0).getCheckOutDate());
     }
 
     @Test
     void cancel() {
     }
 
+    @Test
+    void holdAndConfirm() {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+
+        HoldResponse holdResponse = campsiteService.hold(HoldRequest.builder()
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build());
+        String bookingId = holdResponse.getBookingId();
+
+        List<Allocation> held = allocationRepository.findByBookingId(bookingId);
+        assertEquals(2, held.size());
+        held.forEach(allocation -> assertEquals(ScheduleStatus.HELD, allocation.getStatus()));
+        assertFalse(reservationsRepository.findByBookingIdNoLock(bookingId).isPresent());
+        assertThrows(ReservationException.class, () -> campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f2")
+                .lastName("l2")
+                .email("f2@l2.com")
+                .checkInDate(checkInDate.plusDays(1))
+                .checkOutDate(checkInDate.plusDays(3))
+                .build()));
+
+        ConfirmationResponse confirmationResponse = campsiteService.confirm(ConfirmationRequest.builder()
+                .bookingId(bookingId)
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .build());
+
+        assertEquals(bookingId, confirmationResponse.getReservationResponse().getBookingId());
+        assertEquals(checkInDate.plusDays(2),
+                reservationsRepository.findByBookingIdNoLock(bookingId).get().getCheckOutDate());
+        allocationRepository.findByBookingId(bookingId)
+                .forEach(allocation -> assertEquals(ScheduleStatus.NOT_AVAILABLE, allocation.getStatus()));
+        assertEquals(0, campsiteService.releaseExpiredHolds(Arrays.asList(bookingId)));
+    }
+
+    @Test
+    void releaseExpiredHolds() {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+
+        String bookingId = campsiteService.hold(HoldRequest.builder()
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build()).getBookingId();
+
+        String otherId = campsiteService.hold(HoldRequest.builder()
+                .checkInDate(checkInDate.plusDays(2))
+                .checkOutDate(checkInDate.plusDays(4))
+                .build()).getBookingId();
+
+        assertEquals(0, campsiteService.releaseExpiredHolds(Arrays.asList(bookingId, otherId)));
+
+        List<Allocation> held = new ArrayList<>(allocationRepository.findByBookingId(bookingId));
+        held.addAll(allocationRepository.findByBookingId(otherId));
+        held.forEach(allocation -> allocation.setHeldUntil(LocalDateTime.now().minusSeconds(1)));
+        allocationRepository.saveAll(held);
+
+        // both holds in one bulk release
+        assertEquals(4, campsiteService.releaseExpiredHolds(Arrays.asList(bookingId, otherId)));
+        assertTrue(allocationRepository.findByBookingId(bookingId).isEmpty());
+        assertTrue(allocationRepository.findByBookingId(otherId).isEmpty());
+        scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(4))
+                .forEach(schedule -> assertEquals(0, schedule.getBooked()));
+        assertTrue(campsiteService.available(SchedulesRequest.builder()
+                .startDate(checkInDate)
+                .endDate(checkInDate.plusDays(1))
+                .build()).getAvailableDates().contains(checkInDate));
+        assertThrows(ConfirmationException.class, () -> campsiteService.confirm(ConfirmationRequest.builder()
+                .bookingId(bookingId)
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .build()));
+    }
+
+    /**
+     * The sweeper releases a date under its date lock, so a reserve that takes the freed unit
+     * reaches AvailabilityIndex after the release and the index ends up with nothing left.
+     */
+    @Test
+    void releaseExpiredHoldsConcurrentWithReserve() throws InterruptedException, ExecutionException {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            for (int day = 10; day < 25; day++) {
+                LocalDate checkInDate = availableStartDate.plusDays(day);
+                String holdId = campsiteService.hold(HoldRequest.builder()
+                        .checkInDate(checkInDate)
+                        .checkOutDate(checkInDate.plusDays(1))
+                        .build()).getBookingId();
+                List<Allocation> held = allocationRepository.findByBookingId(holdId);
+                held.forEach(allocation -> allocation.setHeldUntil(LocalDateTime.now().minusSeconds(1)));
+                allocationRepository.saveAll(held);
+
+                CountDownLatch start = new CountDownLatch(1);
+                CompletableFuture<Integer> sweep = CompletableFuture.supplyAsync(() -> {
+                    awaitQuietly(start);
+                    return campsiteService.releaseExpiredHolds(Collections.singletonList(holdId));
+                }, executorService);
+                CompletableFuture<String> reserve = CompletableFuture.supplyAsync(() -> {
+                    awaitQuietly(start);
+                    for (;;) {
+                        boolean swept = sweep.isDone();
+                        try {
+                            return campsiteService.reserve(ReservationRequest.builder()
+                                    .firstName("f")
+                                    .lastName("l")
+                                    .email("f@l.com")
+                                    .checkInDate(checkInDate)
+                                    .checkOutDate(checkInDate.plusDays(1))
+                                    .build()).getBookingId();
+                        } catch (ReservationException ex) {
+                            if (swept) {
+                                throw ex;
+                            }
+                        }
+                    }
+                }, executorService);
+                start.countDown();
+
+                assertEquals(1, sweep.get().intValue());
+                assertNotNull(reserve.get());
+                assertEquals(Collections.emptyMap(), availabilityIndex.remainingCapacity(checkInDate, checkInDate));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * A cancel that looked up the booking's nights before a modify moved it must not release the
+     * new nights under the locks of the old ones: it finds them uncovered and locks them again.
+     */
+    @Test
+    void modifyRacingCancel() throws InterruptedException, ExecutionException {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build()).getBookingId();
+        campsiteService.reservation(bookingId);
+        double relocks = meterRegistry.counter("campsite.booking.retries", "operation", "cancel").count();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            // hold the first night so that modify, then cancel, queue behind it
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch held = new CountDownLatch(1);
+            Future<?> blocker = executorService.submit(() -> dateLockManager.withLocks(Collections.singletonList(checkInDate), () -> {
+                held.countDown();
+                awaitQuietly(release);
+                return null;
+            }));
+            held.await();
+            Future<ModificationResponse> modify = executorService.submit(() -> campsiteService.modify(ModificationRequest.builder()
+                    .bookingId(bookingId)
+                    .checkInDate(checkInDate.plusDays(10))
+                    .checkOutDate(checkInDate.plusDays(12))
+                    .build()));
+            Thread.sleep(200L);
+            Future<CancellationResponse> cancel = executorService.submit(() -> campsiteService.cancel(
+                    CancellationRequest.builder().bookingId(bookingId).build()));
+            Thread.sleep(200L);
+            release.countDown();
+            blocker.get();
+
+            assertEquals(Arrays.asList(checkInDate.plusDays(10), checkInDate.plusDays(11)), modify.get().getAddedDates());
+            assertEquals(Arrays.asList(checkInDate.plusDays(10), checkInDate.plusDays(11)), cancel.get().getCancelledDates());
+            assertEquals(relocks + 1, meterRegistry.counter("campsite.booking.retries", "operation", "cancel").count());
+            assertTrue(allocationRepository.findByBookingId(bookingId).isEmpty());
+            assertEquals(availabilityIndex.remainingCapacity(checkInDate, checkInDate.plusDays(11)),
+                    scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(12)).stream()
+                            .filter(schedule -> schedule.getBooked() < schedule.getCapacity())
+                            .collect(Collectors.toMap(Schedule::getScheduleDate,
+                                    schedule -> schedule.getCapacity() - schedule.getBooked())));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void dateWeightedRemaining() {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+        campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build());
+
+        assertEquals(scheduleRepository.findAllCapacity().stream()
+                        .mapToLong(capacity -> CalendarJournal.dateWeight(capacity.getScheduleDate()) * capacity.getRemaining())
+                        .sum(),
+                scheduleRepository.findDateWeightedRemaining().longValue());
+    }
+
     @Test
     @Transactional
     void modify() {
@@ -298,12 +819,14 @@ class CampsiteServiceTest {
                 .checkOutDate(availableStartDate.plusDays(4))
                 .build());
 
-        String newBookingId = modificationResponse.getReservationResponse().getBookingId();
+        assertEquals(bookingId, modificationResponse.getReservationResponse().getBookingId());
 
-        Optional<Reservation> reservation = reservationsRepository.findByBookingId(newBookingId);
+        Optional<Reservation> reservation = reservationsRepository.findByBookingId(bookingId);
 
         assertEquals(availableStartDate.plusDays(2), reservation.get().getCheckInDate());
         assertEquals(availableStartDate.plusDays(4), reservation.get().getCheckOutDate());
+        assertEquals(ReservationStatus.MODIFIED, reservation.get().getStatus());
+        assertEquals(2, allocationRepository.findByBookingId(bookingId).size());
 
 
     }
@@ -0,0 +1,95 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.SchedulesRequest;
+import com.upgrade.campsite.dto.SchedulesResponse;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.exceptions.ReservationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.capacity=2",
+                "spring.datasource.url=jdbc:h2:mem:capacityTest;DB_CLOSE_DELAY=-1"})
+class CapacityTest {
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    LocalDate availableStartDate = LocalDate.now();
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(availableStartDate)
+                .availableEndDate(availableStartDate.plusWeeks(8L))
+                .build());
+    }
+
+    @Test
+    void sharesNightsUpToCapacity() {
+        LocalDate checkInDate = availableStartDate.plusDays(5);
+        SchedulesRequest window = SchedulesRequest.builder()
+                .startDate(checkInDate)
+                .endDate(checkInDate.plusDays(2))
+                .build();
+
+        String first = campsiteService.reserve(request("f1", checkInDate)).getBookingId();
+        SchedulesResponse schedulesResponse = campsiteService.available(window);
+        assertEquals(3, schedulesResponse.getAvailableDates().size());
+        assertEquals(Integer.valueOf(1), schedulesResponse.getRemainingCapacity().get(checkInDate));
+        assertEquals(Integer.valueOf(2), schedulesResponse.getRemainingCapacity().get(checkInDate.plusDays(2)));
+
+        String second = campsiteService.reserve(request("f2", checkInDate)).getBookingId();
+        schedulesResponse = campsiteService.available(window);
+        assertFalse(schedulesResponse.getAvailableDates().contains(checkInDate));
+        assertNull(schedulesResponse.getRemainingCapacity().get(checkInDate));
+
+        ReservationException ex = assertThrows(ReservationException.class,
+                () -> campsiteService.reserve(request("f3", checkInDate.plusDays(1))));
+        assertEquals(1, ex.getErrors().size());
+        assertTrue(ex.getErrors().get(0).contains(first));
+        assertTrue(ex.getErrors().get(0).contains(second));
+        assertEquals(4, allocationRepository.count());
+
+        campsiteService.cancel(CancellationRequest.builder().bookingId(first).build());
+        schedulesResponse = campsiteService.available(window);
+        assertEquals(Integer.valueOf(1), schedulesResponse.getRemainingCapacity().get(checkInDate));
+        assertEquals(Integer.valueOf(1), scheduleRepository.findByStayNoLock(checkInDate, checkInDate.plusDays(1))
+                .get(0).getBooked());
+    }
+
+    private ReservationRequest request(String firstName, LocalDate checkInDate) {
+        return ReservationRequest.builder()
+                .firstName(firstName)
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build();
+    }
+}
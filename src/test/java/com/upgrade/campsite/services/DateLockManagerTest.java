@@ -0,0 +1,58 @@
+package com.upgrade.campsite.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateLockManagerTest {
+
+    private final DateLockManager dateLockManager = new DateLockManager(1024, 100L);
+
+    private final LocalDate date = LocalDate.of(2020, 7, 1);
+
+    @Test
+    void withLocks() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+                dateLockManager.withLocks(Arrays.asList(date, date.plusDays(1)), () -> {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }));
+        locked.await();
+
+        assertEquals("disjoint", CompletableFuture.supplyAsync(() ->
+                dateLockManager.withLocks(Collections.singletonList(date.plusDays(2)), () -> "disjoint")).join());
+
+        CompletableFuture<String> overlapping = CompletableFuture.supplyAsync(() ->
+                dateLockManager.withLocks(Arrays.asList(date.plusDays(1), date.plusDays(2)), () -> "overlapping"));
+        Throwable ex = assertThrows(Throwable.class, overlapping::join);
+        assertTrue(ex.getCause() instanceof CannotAcquireLockException);
+
+        release.countDown();
+        holder.join();
+        assertEquals("overlapping",
+                dateLockManager.withLocks(Arrays.asList(date.plusDays(1), date.plusDays(2)), () -> "overlapping"));
+    }
+
+    @Test
+    void covers() {
+        assertTrue(dateLockManager.covers(Arrays.asList(date, date.plusDays(1)), Collections.singletonList(date.plusDays(1))));
+        assertTrue(dateLockManager.covers(Collections.singletonList(date), Collections.emptyList()));
+        // a date sharing its stripe is covered too
+        assertTrue(dateLockManager.covers(Collections.singletonList(date), Collections.singletonList(date.plusDays(1024))));
+        assertFalse(dateLockManager.covers(Collections.singletonList(date), Arrays.asList(date, date.plusDays(1))));
+    }
+}
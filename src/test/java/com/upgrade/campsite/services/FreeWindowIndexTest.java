@@ -0,0 +1,101 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import com.upgrade.campsite.events.ScheduleChangeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FreeWindowIndexTest {
+
+    private final LocalDate startDate = LocalDate.of(2020, 7, 1);
+
+    private CalendarStore calendarStore;
+
+    private FreeWindowIndex freeWindowIndex;
+
+    @BeforeEach
+    void beforeEach() {
+        List<DateCapacity> capacities = new ArrayList<>();
+        for (int ii = 0; ii < 10; ii++) {
+            capacities.add(new DateCapacity(startDate.plusDays(ii), 1));
+        }
+        calendarStore = mock(CalendarStore.class);
+        when(calendarStore.availableCapacity()).thenReturn(capacities);
+        freeWindowIndex = new FreeWindowIndex(calendarStore, mock(CalendarJournal.class));
+        freeWindowIndex.reload();
+    }
+
+    @Test
+    void earliestCheckInDates() {
+        freeWindowIndex.onScheduleChange(ScheduleChangeEvent.of(
+                Arrays.asList(startDate.plusDays(1), startDate.plusDays(4)), ScheduleStatus.NOT_AVAILABLE));
+
+        // free: 0, 2 3, 5 6 7 8 9
+        assertEquals(Collections.singletonList(startDate.plusDays(2)),
+                freeWindowIndex.earliestCheckInDates(startDate, startDate.plusDays(9), 2, 1));
+        assertEquals(Arrays.asList(startDate.plusDays(5), startDate.plusDays(6), startDate.plusDays(7)),
+                freeWindowIndex.earliestCheckInDates(startDate, startDate.plusDays(9), 3, 5));
+        assertEquals(Collections.emptyList(),
+                freeWindowIndex.earliestCheckInDates(startDate, startDate.plusDays(6), 3, 5));
+        assertEquals(Collections.singletonList(startDate.plusDays(3)),
+                freeWindowIndex.earliestCheckInDates(startDate.plusDays(3), startDate.plusDays(9), 1, 1));
+    }
+
+    @Test
+    void growsWithTheCalendar() {
+        freeWindowIndex.onScheduleChange(ScheduleChangeEvent.of(
+                Arrays.asList(startDate.minusDays(3), startDate.minusDays(2), startDate.minusDays(1)),
+                ScheduleStatus.AVAILABLE));
+        freeWindowIndex.onScheduleChange(ScheduleChangeEvent.of(
+                Collections.singletonList(startDate.plusDays(100)), ScheduleStatus.AVAILABLE));
+
+        assertEquals(Collections.singletonList(startDate.minusDays(3)),
+                freeWindowIndex.earliestCheckInDates(startDate.minusDays(10), startDate.plusDays(200), 13, 1));
+        assertEquals(Collections.singletonList(startDate.plusDays(100)),
+                freeWindowIndex.earliestCheckInDates(startDate.plusDays(10), startDate.plusDays(200), 1, 1));
+    }
+
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(42L);
+        int days = 300;
+        BitSet free = new BitSet();
+        free.set(0, 10);
+        for (int round = 0; round < 2000; round++) {
+            int day = random.nextInt(days);
+            boolean available = random.nextInt(3) > 0;
+            free.set(day, available);
+            freeWindowIndex.onScheduleChange(ScheduleChangeEvent.of(Collections.singletonList(startDate.plusDays(day)),
+                    available ? ScheduleStatus.AVAILABLE : ScheduleStatus.NOT_AVAILABLE));
+
+            int from = random.nextInt(days);
+            int to = from + random.nextInt(days - from);
+            int nights = 1 + random.nextInt(4);
+            assertEquals(scan(free, from, to, nights, 3),
+                    freeWindowIndex.earliestCheckInDates(startDate.plusDays(from), startDate.plusDays(to), nights, 3));
+        }
+    }
+
+    private List<LocalDate> scan(BitSet free, int from, int to, int nights, int limit) {
+        List<LocalDate> checkInDates = new ArrayList<>();
+        for (int day = from; day + nights - 1 <= to && checkInDates.size() < limit; day++) {
+            if (free.nextClearBit(day) >= day + nights) {
+                checkInDates.add(startDate.plusDays(day));
+            }
+        }
+        return checkInDates;
+    }
+}
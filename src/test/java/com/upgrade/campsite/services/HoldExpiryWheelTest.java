@@ -0,0 +1,44 @@
+package com.upgrade.campsite.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldExpiryWheelTest {
+
+    private final HoldExpiryWheel holdExpiryWheel = new HoldExpiryWheel(1000L, 8, 0L);
+
+    @Test
+    void advance() {
+        holdExpiryWheel.schedule("AAAAA", 2500L);
+        holdExpiryWheel.schedule("BBBBB", 3000L);
+        holdExpiryWheel.schedule("CCCCC", 3001L);
+
+        assertEquals(Collections.emptyList(), holdExpiryWheel.advance(2999L));
+        assertEquals(Arrays.asList("AAAAA", "BBBBB"), holdExpiryWheel.advance(3000L));
+        assertEquals(Arrays.asList("CCCCC"), holdExpiryWheel.advance(4000L));
+        assertEquals(0, holdExpiryWheel.size());
+    }
+
+    @Test
+    void advanceAcrossRounds() {
+        // 8 slots of 1s: 10.5s lands in the same slot as 3s but expires one round later
+        holdExpiryWheel.schedule("AAAAA", 2500L);
+        holdExpiryWheel.schedule("BBBBB", 10500L);
+
+        assertEquals(Arrays.asList("AAAAA"), holdExpiryWheel.advance(5000L));
+        assertEquals(1, holdExpiryWheel.size());
+        assertEquals(Arrays.asList("BBBBB"), holdExpiryWheel.advance(60000L));
+    }
+
+    @Test
+    void scheduleInThePast() {
+        holdExpiryWheel.advance(5000L);
+        holdExpiryWheel.schedule("AAAAA", 1000L);
+
+        assertEquals(Arrays.asList("AAAAA"), holdExpiryWheel.advance(6000L));
+    }
+}
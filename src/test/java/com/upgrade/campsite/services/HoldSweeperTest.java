@@ -0,0 +1,37 @@
+package com.upgrade.campsite.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class HoldSweeperTest {
+
+    private final HoldExpiryWheel holdExpiryWheel = new HoldExpiryWheel(1000L, 8, 0L);
+
+    private final CampsiteService campsiteService = mock(CampsiteService.class);
+
+    private final HoldSweeper holdSweeper = new HoldSweeper(holdExpiryWheel, campsiteService, mock(CalendarStore.class));
+
+    @Test
+    void failedReleasesGoBackOnTheWheel() {
+        holdExpiryWheel.schedule("AAAAA", 1000L);
+        holdExpiryWheel.schedule("BBBBB", 1000L);
+        when(campsiteService.releaseExpiredHolds(anyCollection()))
+                .thenThrow(new CannotAcquireLockException("timed out"));
+        doReturn(2).when(campsiteService).releaseExpiredHolds(Collections.singletonList("AAAAA"));
+
+        holdSweeper.sweep(1000L);
+
+        verify(campsiteService).releaseExpiredHolds(Collections.singletonList("AAAAA"));
+        verify(campsiteService).releaseExpiredHolds(Collections.singletonList("BBBBB"));
+        assertEquals(1, holdExpiryWheel.size());
+        assertEquals(Collections.emptyList(), holdExpiryWheel.advance(1999L));
+        assertEquals(Arrays.asList("BBBBB"), holdExpiryWheel.advance(2000L));
+    }
+}
@@ -0,0 +1,79 @@
+package com.upgrade.campsite.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares IdService with the generator it replaced, with one and with eight threads.
+ * Run the main method from the IDE or with the test classpath; it is not part of mvn test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdServiceBenchmark {
+
+    private static final String allowedCharacters="ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final AtomicLong blocks = new AtomicLong();
+
+    // large enough that the 26^13 space never runs out during a run
+    private final IdService idService = new IdService(blocks::getAndIncrement, 1000L, 42L);
+
+    @Benchmark
+    public String permutedCounter() {
+        return idService.generateId(13);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String permutedCounterContended() {
+        return idService.generateId(13);
+    }
+
+    @Benchmark
+    public String mathRandom() {
+        return previousGenerateId(13);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String mathRandomContended() {
+        return previousGenerateId(13);
+    }
+
+    /**
+     * The previous IdService.generateId.
+     */
+    private String previousGenerateId(Integer length) {
+        String result = "";
+        Integer aLength = allowedCharacters.length();
+        Integer counter=length;
+        while (counter > 0) {
+            Integer r = Double.valueOf(aLength * Math.random()).intValue();
+            result = result + allowedCharacters.charAt(r);
+            counter--;
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IdServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+}
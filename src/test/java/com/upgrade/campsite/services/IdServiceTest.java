@@ -6,7 +6,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @TestPropertySource(locations="classpath:application-test.properties")
@@ -19,6 +25,31 @@ public class IdServiceTest {
     public void generateId() {
         String bookingId = idService.generateId(5);
         assertEquals(5, bookingId.length());
+        assertTrue(bookingId.matches("[A-Z]{5}"));
+    }
+
+    @Test
+    public void generateIdUnique() {
+        AtomicLong blocks = new AtomicLong();
+        IdService ids = new IdService(blocks::getAndIncrement, 10L, 42L);
+
+        // every one of the 26^2 IDs of length 2 is issued exactly once
+        Set<String> bookingIds = new HashSet<>();
+        for (int ii = 0; ii < 26 * 26; ii++) {
+            assertTrue(bookingIds.add(ids.generateId(2)));
+        }
+        assertThrows(IllegalStateException.class, () -> ids.generateId(2));
+    }
+
+    @Test
+    public void generateIdSkipsTakenIds() {
+        IdService ids = new IdService(new AtomicLong()::getAndIncrement, 10L, 42L);
+        String first = ids.generateId(5);
+        String second = ids.generateId(5);
+
+        // an old random ID equal to the next permuted one
+        IdService upgraded = new IdService(new AtomicLong()::getAndIncrement, 10L, 42L);
+        assertEquals(second, upgraded.generateId(5, first::equals));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.DateCapacity;
+import com.upgrade.campsite.dto.StayClaim;
+import com.upgrade.campsite.enums.ScheduleStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryCalendarStoreTest {
+
+    private final LocalDate startDate = LocalDate.of(2020, 7, 1);
+
+    private InMemoryCalendarStore calendarStore;
+
+    @BeforeEach
+    void beforeEach() {
+        calendarStore = new InMemoryCalendarStore();
+        assertEquals(10, calendarStore.addDates(startDate, startDate.plusDays(9), 2).size());
+    }
+
+    @Test
+    void addDates() {
+        assertEquals(Collections.singletonList(startDate.plusDays(10)),
+                calendarStore.addDates(startDate.plusDays(5), startDate.plusDays(10), 2));
+        assertEquals(startDate.plusDays(10), calendarStore.lastDate().get());
+        assertEquals(11, calendarStore.availableCapacity().size());
+    }
+
+    @Test
+    void claimAndRelease() {
+        assertTrue(claim("b1", startDate, 3).isEmpty());
+        assertTrue(claim("b2", startDate.plusDays(1), 2).isEmpty());
+        assertEquals(Arrays.asList(startDate, startDate.plusDays(1), startDate.plusDays(2)),
+                calendarStore.bookedNights("b1"));
+
+        List<String> errors = claim("b3", startDate, 3);
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0).startsWith(startDate.plusDays(1) + " Date not available."));
+        assertTrue(errors.get(0).contains("b1") && errors.get(0).contains("b2"));
+        // the failed claim gave back the unit it took on the first night
+        assertEquals(Integer.valueOf(1), calendarStore.remaining(Collections.singletonList(startDate)).get(0).getRemaining());
+        assertTrue(calendarStore.bookedNights("b3").isEmpty());
+
+        calendarStore.release("b1", Arrays.asList(startDate, startDate.plusDays(1)));
+        assertEquals(Collections.singletonList(startDate.plusDays(2)), calendarStore.bookedNights("b1"));
+        assertEquals(Arrays.asList(new DateCapacity(startDate, 2), new DateCapacity(startDate.plusDays(1), 1)),
+                calendarStore.remaining(Arrays.asList(startDate, startDate.plusDays(1), startDate.minusDays(1))));
+
+        assertTrue(claim("b4", startDate.plusDays(9), 2).get(0).startsWith(startDate.plusDays(10) + " Date not available."));
+    }
+
+    @Test
+    void claimAll() {
+        List<List<String>> errors = calendarStore.claimAll(Arrays.asList(
+                new StayClaim("b1", startDate, startDate.plusDays(2)),
+                new StayClaim("b2", startDate.plusDays(1), startDate.plusDays(2)),
+                new StayClaim("b3", startDate.plusDays(1), startDate.plusDays(3))));
+        assertTrue(errors.get(0).isEmpty());
+        assertTrue(errors.get(1).isEmpty());
+        assertEquals(1, errors.get(2).size());
+        assertTrue(calendarStore.bookedNights("b3").isEmpty());
+        assertFalse(calendarStore.availableCapacity().stream()
+                .anyMatch(capacity -> capacity.getScheduleDate().equals(startDate.plusDays(1))));
+    }
+
+    @Test
+    void holds() {
+        LocalDateTime now = LocalDateTime.of(2020, 6, 1, 12, 0);
+        calendarStore.claim(startDate, startDate.plusDays(2), "h1", ScheduleStatus.HELD, now.plusMinutes(10));
+        calendarStore.claim(startDate, startDate.plusDays(1), "h2", ScheduleStatus.HELD, now.minusMinutes(1));
+        assertEquals(now.plusMinutes(10), calendarStore.holds().get("h1"));
+        assertEquals(2, calendarStore.heldNights("h1").size());
+
+        assertEquals(0, calendarStore.confirmHold("h2", now));
+        assertEquals(2, calendarStore.confirmHold("h1", now));
+        assertTrue(calendarStore.heldNights("h1").isEmpty());
+        assertEquals(2, calendarStore.bookedNights("h1").size());
+
+        assertEquals(Collections.singletonList(startDate),
+                calendarStore.releaseExpiredHolds(Arrays.asList("h1", "h2"), now));
+        assertTrue(calendarStore.holds().isEmpty());
+        assertEquals(Integer.valueOf(1), calendarStore.remaining(Collections.singletonList(startDate)).get(0).getRemaining());
+    }
+
+    @Test
+    void archiveBefore() {
+        assertTrue(claim("b1", startDate.plusDays(1), 3).isEmpty());
+
+        assertEquals(Arrays.asList(startDate, startDate.plusDays(1)), calendarStore.archiveBefore(startDate.plusDays(3), 2));
+        assertEquals(Collections.singletonList(startDate.plusDays(2)), calendarStore.archiveBefore(startDate.plusDays(3), 2));
+        assertTrue(calendarStore.archiveBefore(startDate.plusDays(3), 2).isEmpty());
+
+        assertEquals(Collections.singletonList(startDate.plusDays(3)), calendarStore.bookedNights("b1"));
+        assertEquals(7, calendarStore.availableCapacity().size());
+    }
+
+    @Test
+    void rollback() {
+        assertTrue(claim("b1", startDate, 2).isEmpty());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(claim("b2", startDate.plusDays(1), 2).isEmpty());
+            calendarStore.release("b1", calendarStore.bookedNights("b1"));
+            calendarStore.addDates(startDate.plusDays(10), startDate.plusDays(11), 2);
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                    TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(Arrays.asList(startDate, startDate.plusDays(1)), calendarStore.bookedNights("b1"));
+        assertTrue(calendarStore.bookedNights("b2").isEmpty());
+        assertEquals(startDate.plusDays(9), calendarStore.lastDate().get());
+        assertEquals(Arrays.asList(new DateCapacity(startDate, 1), new DateCapacity(startDate.plusDays(1), 1),
+                new DateCapacity(startDate.plusDays(2), 2)),
+                calendarStore.remaining(Arrays.asList(startDate, startDate.plusDays(1), startDate.plusDays(2))));
+    }
+
+    @Test
+    void rolledBackReleaseNeverOverbooks() {
+        assertTrue(claim("b1", startDate, 1).isEmpty());
+        assertTrue(claim("b2", startDate, 1).isEmpty());
+
+        List<TransactionSynchronization> release;
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            calendarStore.release("b1", calendarStore.bookedNights("b1"));
+            release = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // taken by a claim that did not wait for the date lock
+        assertTrue(claim("b3", startDate, 1).isEmpty());
+        TransactionSynchronizationUtils.invokeAfterCompletion(release, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(Collections.singletonList(new DateCapacity(startDate, 0)),
+                calendarStore.remaining(Collections.singletonList(startDate)));
+    }
+
+    @Test
+    void concurrentClaimsNeverOverbook() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> claims = IntStream.range(0, 40)
+                    .mapToObj(ii -> executor.submit(() -> claim("c" + ii, startDate.plusDays(ii % 3), 4)))
+                    .collect(Collectors.toList());
+            long claimed = 0;
+            for (Future<List<String>> claim : claims) {
+                if (claim.get(10, TimeUnit.SECONDS).isEmpty()) {
+                    claimed++;
+                }
+            }
+            assertTrue(claimed >= 1 && claimed <= 2);
+            for (DateCapacity capacity : calendarStore.remaining(calendarStore.bookedNights("c0"))) {
+                assertTrue(capacity.getRemaining() >= 0);
+            }
+            assertTrue(calendarStore.availableCapacity().stream()
+                    .allMatch(capacity -> capacity.getRemaining() <= 2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> claim(String bookingId, LocalDate checkInDate, int nights) {
+        return calendarStore.claim(checkInDate, checkInDate.plusDays(nights), bookingId, ScheduleStatus.NOT_AVAILABLE, null);
+    }
+}
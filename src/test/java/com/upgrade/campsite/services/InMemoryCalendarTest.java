@@ -0,0 +1,84 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.ModificationRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.SchedulesRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.exceptions.ModificationException;
+import com.upgrade.campsite.exceptions.ReservationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.calendarStore=IN_MEMORY",
+                "spring.datasource.url=jdbc:h2:mem:inMemoryCalendarTest;DB_CLOSE_DELAY=-1"})
+class InMemoryCalendarTest {
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private CalendarStore calendarStore;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Test
+    void booksWithoutCalendarTables() {
+        assertTrue(calendarStore instanceof InMemoryCalendarStore);
+        assertTrue(calendarStore.lastDate().isPresent());
+
+        LocalDate checkInDate = LocalDate.now().plusDays(5);
+        SchedulesRequest window = SchedulesRequest.builder()
+                .startDate(checkInDate)
+                .endDate(checkInDate.plusDays(2))
+                .build();
+
+        String bookingId = campsiteService.reserve(request(checkInDate)).getBookingId();
+        assertEquals(Arrays.asList(checkInDate, checkInDate.plusDays(1)), calendarStore.bookedNights(bookingId));
+        assertEquals(Arrays.asList(checkInDate.plusDays(2)), campsiteService.available(window).getAvailableDates());
+        assertThrows(ReservationException.class, () -> campsiteService.reserve(request(checkInDate.plusDays(1))));
+
+        // a failed modification rolls back the night it released before claiming the taken one
+        String otherBookingId = campsiteService.reserve(request(checkInDate.minusDays(2))).getBookingId();
+        assertThrows(ModificationException.class, () -> campsiteService.modify(
+                ModificationRequest.builder()
+                        .bookingId(bookingId)
+                        .checkInDate(checkInDate.minusDays(1))
+                        .checkOutDate(checkInDate.plusDays(1))
+                        .build()));
+        assertEquals(Arrays.asList(checkInDate, checkInDate.plusDays(1)), calendarStore.bookedNights(bookingId));
+        assertEquals(Integer.valueOf(0), calendarStore.remaining(Arrays.asList(checkInDate.plusDays(1))).get(0).getRemaining());
+        campsiteService.cancel(CancellationRequest.builder().bookingId(otherBookingId).build());
+
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+        assertTrue(calendarStore.bookedNights(bookingId).isEmpty());
+        assertEquals(3, campsiteService.available(window).getAvailableDates().size());
+
+        assertEquals(0, scheduleRepository.count());
+        assertEquals(0, allocationRepository.count());
+    }
+
+    private ReservationRequest request(LocalDate checkInDate) {
+        return ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.dto.ReservationResponse;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.exceptions.ReservationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties",
+        properties = {"upgrade.campsite.batching.enabled=true", "upgrade.campsite.batching.maxWaitMillis=200",
+                "spring.datasource.url=jdbc:h2:mem:reservationBatcherTest;DB_CLOSE_DELAY=-1"})
+class ReservationBatcherTest {
+
+    @Autowired
+    private ReservationBatcher reservationBatcher;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    LocalDate availableStartDate = LocalDate.now();
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(availableStartDate)
+                .availableEndDate(availableStartDate.plusWeeks(8L))
+                .build());
+    }
+
+    @Test
+    void resolvesConflictsWithinABatch() {
+        LocalDate checkInDate = availableStartDate.plusDays(3);
+
+        CompletableFuture<ReservationResponse> first = reservationBatcher.submit(request("f1", checkInDate, 2));
+        CompletableFuture<ReservationResponse> overlapping = reservationBatcher.submit(request("f2", checkInDate.plusDays(1), 2));
+        CompletableFuture<ReservationResponse> disjoint = reservationBatcher.submit(request("f3", checkInDate.plusDays(5), 3));
+        CompletableFuture<ReservationResponse> invalid = reservationBatcher.submit(request("", checkInDate.plusDays(10), 1));
+
+        String bookingId = first.join().getBookingId();
+        assertNotNull(bookingId);
+        assertNotNull(disjoint.join().getBookingId());
+
+        CompletionException ex = assertThrows(CompletionException.class, overlapping::join);
+        ReservationException reservationException = (ReservationException) ex.getCause();
+        assertEquals(1, reservationException.getErrors().size());
+        assertTrue(reservationException.getErrors().get(0).contains(bookingId));
+
+        ex = assertThrows(CompletionException.class, invalid::join);
+        assertEquals("First Name is required.", ((ReservationException) ex.getCause()).getErrors().get(0));
+
+        assertEquals(2, reservationsRepository.count());
+        assertEquals(2, allocationRepository.findByBookingId(bookingId).size());
+    }
+
+    @Test
+    void stopCommitsTheCurrentBatchAndRejectsTheRest() throws InterruptedException {
+        // a batch that would wait far longer than the test for more requests
+        ReservationBatcher batcher = new ReservationBatcher(campsiteService, meterRegistry, true, 10, 60_000L);
+        batcher.start();
+        CompletableFuture<ReservationResponse> first = batcher.submit(request("s1", availableStartDate.plusDays(1), 1));
+        CompletableFuture<ReservationResponse> second = batcher.submit(request("s2", availableStartDate.plusDays(2), 1));
+
+        while (batcher.queued() > 0) {
+            Thread.sleep(10L);
+        }
+        batcher.stop();
+
+        assertNotNull(first.getNow(null).getBookingId());
+        assertNotNull(second.getNow(null).getBookingId());
+        assertEquals(2, reservationsRepository.count());
+
+        CompletableFuture<ReservationResponse> late = batcher.submit(request("s3", availableStartDate.plusDays(3), 1));
+        CompletionException ex = assertThrows(CompletionException.class, late::join);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> batcher.reserve(request("s4", availableStartDate.plusDays(4), 1)));
+    }
+
+    @Test
+    void stopLeavesNoRequestWaiting() throws InterruptedException {
+        ReservationBatcher batcher = new ReservationBatcher(campsiteService, meterRegistry, true, 1, 0L);
+        batcher.start();
+        List<CompletableFuture<ReservationResponse>> futures = new ArrayList<>();
+        for (int ii = 0; ii < 20; ii++) {
+            futures.add(batcher.submit(request("q" + ii, availableStartDate.plusDays(ii + 1), 1)));
+        }
+
+        batcher.stop();
+
+        long committed = 0;
+        for (CompletableFuture<ReservationResponse> future : futures) {
+            assertTrue(future.isDone());
+            if (future.isCompletedExceptionally()) {
+                CompletionException ex = assertThrows(CompletionException.class, future::join);
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+            } else {
+                committed++;
+            }
+        }
+        assertEquals(committed, reservationsRepository.count());
+    }
+
+    private ReservationRequest request(String firstName, LocalDate checkInDate, long nights) {
+        return ReservationRequest.builder()
+                .firstName(firstName)
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(nights))
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ModificationRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ReservationStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties")
+class ReservationCacheTest {
+
+    @Autowired
+    private ReservationCache reservationCache;
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    LocalDate checkInDate = LocalDate.now().plusDays(3L);
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(LocalDate.now())
+                .availableEndDate(LocalDate.now().plusDays(20L))
+                .build());
+    }
+
+    @Test
+    void coherentWithWrites() {
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build()).getBookingId();
+
+        assertSame(reservationCache.reservation(bookingId).get(), campsiteService.reservation(bookingId).get());
+        assertEquals(Arrays.asList(checkInDate, checkInDate.plusDays(1)), reservationCache.scheduleDates(bookingId));
+
+        campsiteService.modify(ModificationRequest.builder()
+                .bookingId(bookingId)
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(3))
+                .build());
+        assertEquals(checkInDate.plusDays(3), campsiteService.reservation(bookingId).get().getCheckOutDate());
+        assertEquals(3, reservationCache.scheduleDates(bookingId).size());
+
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+        assertEquals(ReservationStatus.CANCELED, campsiteService.reservation(bookingId).get().getStatus());
+        assertTrue(reservationCache.scheduleDates(bookingId).isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.dto.CancellationRequest;
+import com.upgrade.campsite.dto.InitializeRequest;
+import com.upgrade.campsite.dto.ModificationRequest;
+import com.upgrade.campsite.dto.ReservationRequest;
+import com.upgrade.campsite.entities.AllocationRepository;
+import com.upgrade.campsite.entities.Reservation;
+import com.upgrade.campsite.entities.ReservationHistory;
+import com.upgrade.campsite.entities.ReservationHistoryRepository;
+import com.upgrade.campsite.entities.ReservationsRepository;
+import com.upgrade.campsite.entities.ScheduleRepository;
+import com.upgrade.campsite.enums.ReservationStatus;
+import com.upgrade.campsite.events.ReservationHistoryEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+@TestPropertySource(locations="classpath:application-test.properties")
+class ReservationHistoryWriterTest {
+
+    @Autowired
+    private CampsiteService campsiteService;
+
+    @Autowired
+    private ReservationHistoryRepository reservationHistoryRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
+    @Autowired
+    private ReservationsRepository reservationsRepository;
+
+    LocalDate checkInDate = LocalDate.now().plusDays(3L);
+
+    @BeforeEach
+    void beforeEach() {
+        allocationRepository.deleteAll();
+        scheduleRepository.deleteAll();
+        reservationsRepository.deleteAll();
+        campsiteService.initialize(InitializeRequest.builder()
+                .availableStartDate(LocalDate.now())
+                .availableEndDate(LocalDate.now().plusDays(20L))
+                .build());
+    }
+
+    @Test
+    void recordsEveryChangeAfterCommit() throws InterruptedException {
+        String bookingId = campsiteService.reserve(ReservationRequest.builder()
+                .firstName("f")
+                .lastName("l")
+                .email("f@l.com")
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(2))
+                .build()).getBookingId();
+        campsiteService.modify(ModificationRequest.builder()
+                .bookingId(bookingId)
+                .checkInDate(checkInDate)
+                .checkOutDate(checkInDate.plusDays(3))
+                .build());
+        campsiteService.cancel(CancellationRequest.builder().bookingId(bookingId).build());
+
+        List<ReservationHistory> history = reservationHistoryRepository.findByBookingIdOrderById(bookingId);
+        for (int ii = 0; ii < 50 && history.size() < 3; ii++) {
+            Thread.sleep(100L);
+            history = reservationHistoryRepository.findByBookingIdOrderById(bookingId);
+        }
+
+        assertEquals(Arrays.asList(ReservationStatus.RESERVED, ReservationStatus.MODIFIED, ReservationStatus.CANCELED),
+                history.stream().map(ReservationHistory::getStatus).collect(Collectors.toList()));
+        assertEquals(checkInDate.plusDays(2), history.get(0).getCheckOutDate());
+        assertEquals(checkInDate.plusDays(3), history.get(1).getCheckOutDate());
+        assertNotNull(history.get(0).getReservationId());
+    }
+
+    @Test
+    void dropsWhenQueueIsFull() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReservationHistoryWriter writer = new ReservationHistoryWriter(
+                mock(ReservationHistoryRepository.class), meterRegistry, 2, 10);
+
+        writer.onReservationHistory(ReservationHistoryEvent.of(Arrays.asList(
+                Reservation.builder().bookingId("a").build(),
+                Reservation.builder().bookingId("b").build(),
+                Reservation.builder().bookingId("c").build()), "test"));
+
+        assertEquals(2, writer.queued());
+        assertEquals(2.0, meterRegistry.get("campsite.reservationHistory.queue").gauge().value());
+        assertEquals(1.0, meterRegistry.get("campsite.reservationHistory.dropped").counter().count());
+    }
+}
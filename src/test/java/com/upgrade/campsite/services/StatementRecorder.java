@@ -0,0 +1,31 @@
+package com.upgrade.campsite.services;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL Hibernate prepares on each thread, so that a test counts its own statements
+ * and not those of background workers such as ReservationHistoryWriter.  Registered through
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ */
+public class StatementRecorder implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.get().add(sql);
+        return sql;
+    }
+
+    /**
+     * Returns and forgets the statements prepared on the calling thread since the last call.
+     */
+    public static List<String> take() {
+        List<String> statements = new ArrayList<>(STATEMENTS.get());
+        STATEMENTS.get().clear();
+        return statements;
+    }
+}